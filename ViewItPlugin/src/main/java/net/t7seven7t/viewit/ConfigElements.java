@@ -13,28 +13,45 @@
  */
 package net.t7seven7t.viewit;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import net.t7seven7t.viewit.preferences.PreferenceStore;
+import net.t7seven7t.viewit.scoreboard.ScoreboardBatch;
 import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
 import net.t7seven7t.viewit.scoreboard.ScoreboardService;
 import net.t7seven7t.viewit.supply.FrameSupply;
 import net.t7seven7t.viewit.supply.Supply;
 
 import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
 import org.bukkit.configuration.Configuration;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.Plugin;
 
-import java.util.Arrays;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 /**
@@ -43,14 +60,32 @@ import java.util.stream.Collectors;
 public class ConfigElements implements Listener {
 
     private final Map<String, ScoreboardElement> elementsMap;
+    // Definitions the current elements were created from; only touched on the main thread
+    private final Map<String, Definition> definitions;
+    // Elements of each layout resolved from the config; only touched on the main thread
+    private Map<String, List<ScoreboardElement>> layouts;
+    // Layout shown in each world that has one
+    private Map<String, List<ScoreboardElement>> worldLayouts;
+    // Layout shown where no other layout applies; contains every element
+    private List<ScoreboardElement> defaultLayout;
+    // Layouts players have chosen in place of the layout of their world
+    private final Map<Player, String> selectedLayouts;
+    // Layout each player is currently shown
+    private final Map<Player, List<ScoreboardElement>> shownLayouts;
     private final Plugin plugin;
 
     public ConfigElements(Plugin plugin) {
         this.elementsMap = new MapMaker().makeMap();
+        this.definitions = Maps.newHashMap();
+        this.layouts = Collections.emptyMap();
+        this.worldLayouts = Collections.emptyMap();
+        this.defaultLayout = Collections.emptyList();
+        this.selectedLayouts = new MapMaker().weakKeys().makeMap();
+        this.shownLayouts = new MapMaker().weakKeys().makeMap();
         this.plugin = plugin;
-        loadFromConfiguration(plugin.getConfig());
         Bukkit.getPluginManager().registerEvents(this, plugin);
-        Bukkit.getOnlinePlayers().forEach(this::addAllToPlayer);
+        loadFromConfiguration(plugin.getConfig());
+        Bukkit.getOnlinePlayers().forEach(this::loadSelectedLayout);
     }
 
     @EventHandler(priority = EventPriority.HIGH)
@@ -58,21 +93,281 @@ public class ConfigElements implements Listener {
         if (plugin.getConfig().isBoolean("track-players-on-join")) {
             addAllToPlayer(event.getPlayer());
         }
+        loadSelectedLayout(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        Player player = event.getPlayer();
+        if (shownLayouts.containsKey(player)) {
+            showLayout(player);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        selectedLayouts.remove(event.getPlayer());
+        shownLayouts.remove(event.getPlayer());
     }
 
     public Map<String, ScoreboardElement> getElementsMap() {
         return elementsMap;
     }
 
+    /**
+     * Gets the names of every layout defined in the config
+     */
+    public Set<String> getLayoutNames() {
+        return Collections.unmodifiableSet(layouts.keySet());
+    }
+
+    /**
+     * Shows a player the config elements of the layout that applies to them
+     */
     public void addAllToPlayer(Player player) {
-        ScoreboardService.getInstance().addElements(player,
-                elementsMap.values().toArray(new ScoreboardElement[elementsMap.size()]));
+        showLayout(player);
+    }
+
+    /**
+     * Chooses the layout a player is shown regardless of their world
+     *
+     * @param player player to choose for
+     * @param layout name of the layout or null to use the layout of their world
+     */
+    public void selectLayout(Player player, String layout) {
+        if (layout == null) {
+            selectedLayouts.remove(player);
+        } else {
+            selectedLayouts.put(player, layout);
+        }
+        if (shownLayouts.containsKey(player)) {
+            showLayout(player);
+        }
+    }
+
+    /**
+     * Applies the layout a player chose in a previous session once their preferences are loaded
+     */
+    private void loadSelectedLayout(Player player) {
+        PreferenceStore store = ViewItPlugin.getInstance().getPreferenceStore();
+        store.load(player, preferences -> {
+            if (preferences.getLayout() != null) {
+                selectLayout(player, preferences.getLayout());
+            }
+        });
+    }
+
+    /**
+     * Gets the elements of the layout a player should be shown
+     */
+    private List<ScoreboardElement> getLayout(Player player) {
+        String selected = selectedLayouts.get(player);
+        List<ScoreboardElement> layout = selected == null ? null : layouts.get(selected);
+        if (layout == null) {
+            layout = worldLayouts.get(player.getWorld().getName());
+        }
+        return layout == null ? defaultLayout : layout;
     }
 
+    /**
+     * Switches a player to the layout that applies to them in one operation so only the lines
+     * that differ between the layouts are redrawn
+     */
+    private void showLayout(Player player) {
+        ScoreboardBatch batch = ScoreboardService.getInstance().batch();
+        showLayout(player, batch);
+        batch.commit();
+    }
+
+    /**
+     * Adds switching a player to the layout that applies to them to a batch
+     */
+    private void showLayout(Player player, ScoreboardBatch batch) {
+        List<ScoreboardElement> layout = getLayout(player);
+        List<ScoreboardElement> shown = shownLayouts.getOrDefault(player,
+                Collections.emptyList());
+        if (layout == shown) {
+            return;
+        }
+
+        Set<ScoreboardElement> remove = Sets.newIdentityHashSet();
+        remove.addAll(shown);
+        remove.removeAll(layout);
+        Set<ScoreboardElement> add = Sets.newIdentityHashSet();
+        add.addAll(layout);
+        add.removeAll(shown);
+        if (!remove.isEmpty() || !add.isEmpty()) {
+            batch.removeElements(player, remove.toArray(new ScoreboardElement[remove.size()]));
+            batch.addElements(player, add.toArray(new ScoreboardElement[add.size()]));
+        }
+        shownLayouts.put(player, layout);
+    }
+
+    /**
+     * Loads elements from a configuration, only replacing those whose definition has changed. Must
+     * be called on the main thread.
+     */
     public void loadFromConfiguration(Configuration config) {
-        elementsMap.clear();
+        List<String> errors = Lists.newArrayList();
+        Parsed loaded = parse(config, errors);
+        errors.forEach(plugin.getLogger()::severe);
+        apply(loaded);
+    }
+
+    /**
+     * Reads the config file off the main thread and then swaps any elements that were added,
+     * removed or changed on the main thread. Elements that are unchanged keep their animation
+     * state and rendered lines.
+     *
+     * @param callback run on the main thread with whether the config could be reloaded
+     */
+    public void reload(Consumer<Boolean> callback) {
+        reload(false, callback);
+    }
+
+    /**
+     * Reads the config file off the main thread and then swaps any elements that were added,
+     * removed or changed on the main thread.
+     *
+     * @param strict   whether to leave everything as it is if any element is invalid rather than
+     *                 skipping invalid elements
+     * @param callback run on the main thread with whether the config was applied
+     */
+    public void reload(boolean strict, Consumer<Boolean> callback) {
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            YamlConfiguration config = new YamlConfiguration();
+            try {
+                config.load(file);
+            } catch (IOException | InvalidConfigurationException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not reload " + file, e);
+                Bukkit.getScheduler().runTask(plugin, () -> callback.accept(false));
+                return;
+            }
+
+            List<String> errors = Lists.newArrayList();
+            Parsed loaded = parse(config, errors);
+            if (strict && !errors.isEmpty()) {
+                plugin.getLogger().severe("Not applying changes to " + file.getName() + " since "
+                        + errors.size() + " scoreboard element(s) or layout(s) are invalid:");
+                errors.forEach(plugin.getLogger()::severe);
+                Bukkit.getScheduler().runTask(plugin, () -> callback.accept(false));
+                return;
+            }
+
+            // settings and elements are swapped together in a single task
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                errors.forEach(plugin.getLogger()::severe);
+                copySettings(config);
+                apply(loaded);
+                callback.accept(true);
+            });
+        });
+    }
+
+    /**
+     * Replaces the plugin's settings with those of a freshly loaded config
+     */
+    private void copySettings(Configuration config) {
+        Configuration current = plugin.getConfig();
+        for (String key : current.getKeys(false)) {
+            if (!config.contains(key)) {
+                current.set(key, null);
+            }
+        }
+        config.getKeys(false).forEach(key -> current.set(key, config.get(key)));
+    }
+
+    /**
+     * Swaps elements whose definitions were added, removed or changed and moves every online
+     * player to their layout as resolved from the new config
+     */
+    private void apply(Parsed loaded) {
+        List<ScoreboardElement> removed = Lists.newArrayList();
+        Iterator<Map.Entry<String, Definition>> it = definitions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Definition> entry = it.next();
+            if (!entry.getValue().equals(loaded.definitions.get(entry.getKey()))) {
+                removed.add(elementsMap.remove(entry.getKey()));
+                it.remove();
+            }
+        }
+
+        loaded.definitions.forEach((key, definition) -> {
+            if (!definitions.containsKey(key)) {
+                definitions.put(key, definition);
+                elementsMap.put(key, definition.create(plugin, key));
+            }
+        });
+
+        // resolve layouts once here rather than every time a player needs one
+        defaultLayout = loaded.definitions.keySet().stream().map(elementsMap::get)
+                .collect(Collectors.toList());
+        Map<String, List<ScoreboardElement>> layouts = Maps.newHashMap();
+        loaded.layouts.forEach((name, elements) -> layouts.put(name,
+                elements.stream().map(elementsMap::get).collect(Collectors.toList())));
+        Map<String, List<ScoreboardElement>> worldLayouts = Maps.newHashMap();
+        loaded.worldLayouts
+                .forEach((world, layout) -> worldLayouts.put(world, layouts.get(layout)));
+        this.layouts = layouts;
+        this.worldLayouts = worldLayouts;
+
+        // every player switches in the same update
+        ScoreboardBatch batch = ScoreboardService.getInstance().batch();
+        Bukkit.getOnlinePlayers().forEach(player -> showLayout(player, batch));
+        // removed elements are drawn until the batch is applied so are cancelled after
+        batch.commit(() -> removed.forEach(ScoreboardElement::cancel));
+    }
+
+    /**
+     * Reads the definitions of all elements in a config. Doesn't touch any game state so may be
+     * called from any thread.
+     *
+     * @param config config to read from
+     * @param errors list that a message is added to for every invalid element or layout
+     * @return definitions of valid elements and layouts
+     */
+    private static Parsed parse(ConfigurationSection config, List<String> errors) {
+        Parsed parsed = new Parsed();
+        parsed.definitions = parseElements(config, errors);
+
+        if (config.isConfigurationSection("layouts")) {
+            ConfigurationSection section = config.getConfigurationSection("layouts");
+            for (String name : section.getKeys(false)) {
+                List<String> elements = Lists.newArrayList(section.getStringList(name));
+                List<String> unknown = elements.stream()
+                        .filter(element -> !parsed.definitions.containsKey(element))
+                        .collect(Collectors.toList());
+                if (!unknown.isEmpty()) {
+                    errors.add("Layout '" + name + "' contains unknown elements " + unknown);
+                    elements.removeAll(unknown);
+                }
+                parsed.layouts.put(name, elements);
+            }
+        }
+
+        if (config.isConfigurationSection("world-layouts")) {
+            ConfigurationSection section = config.getConfigurationSection("world-layouts");
+            for (String world : section.getKeys(false)) {
+                String layout = section.getString(world);
+                if (parsed.layouts.containsKey(layout)) {
+                    parsed.worldLayouts.put(world, layout);
+                } else {
+                    errors.add("World '" + world + "' uses unknown layout '" + layout + "'");
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Reads the definitions of all elements in a config
+     */
+    private static Map<String, Definition> parseElements(ConfigurationSection config,
+                                                         List<String> errors) {
+        Map<String, Definition> result = Maps.newLinkedHashMap();
         if (!config.isConfigurationSection("scoreboard-elements")) {
-            return;
+            return result;
         }
 
         ConfigurationSection elementsRoot = config.getConfigurationSection("scoreboard-elements");
@@ -88,51 +383,169 @@ public class ConfigElements implements Listener {
             delayPath = child + ".delay";
 
             if (!elementsRoot.isInt(priorityPath)) {
-                plugin.getLogger().severe(
-                        "Scoreboard element '" + child + "' in config has no priority property");
+                errors.add("Scoreboard element '" + child + "' in config has no priority property");
                 continue;
             } else if (!elementsRoot.contains(textPath)) {
-                plugin.getLogger().severe(
-                        "Scoreboard element '" + child + "' in config has no text property");
+                errors.add("Scoreboard element '" + child + "' in config has no text property");
                 continue;
             }
 
             int priority = elementsRoot.getInt(priorityPath);
             long delay = elementsRoot.getLong(delayPath, -1);
+            List<Object> lines = Lists.newArrayList();
             List<FrameSupply> supplyList = Lists.newArrayList();
 
-            if (elementsRoot.isConfigurationSection(textPath)) {
-                for (String line : elementsRoot.getConfigurationSection(textPath).getKeys(false)) {
-                    String linePath = textPath + "." + line;
-                    addSupply(supplyList, elementsRoot, linePath);
+            try {
+                if (elementsRoot.isConfigurationSection(textPath)
+                        && !elementsRoot.contains(textPath + ".effect")) {
+                    ConfigurationSection text = elementsRoot.getConfigurationSection(textPath);
+                    for (String line : text.getKeys(false)) {
+                        String linePath = textPath + "." + line;
+                        addLine(lines, supplyList, elementsRoot, linePath);
+                    }
+                } else {
+                    addLine(lines, supplyList, elementsRoot, textPath);
                 }
-            } else {
-                addSupply(supplyList, elementsRoot, textPath);
+            } catch (IllegalArgumentException e) {
+                errors.add("Scoreboard element '" + child + "' has an invalid effect: "
+                        + e.getMessage());
+                continue;
             }
 
-            if (supplyList.isEmpty()) {
-                plugin.getLogger().severe("Scoreboard element '" + child
+            if (lines.isEmpty()) {
+                errors.add("Scoreboard element '" + child
                         + "' text property is incorrectly defined");
                 continue;
             }
 
-            elementsMap.put(child, ScoreboardElement.of(plugin, priority, delay, supplyList));
+            result.put(child, new Definition(priority, delay, lines, supplyList));
         }
+        return result;
     }
 
     /**
-     * Attempt to add a supply to a list if the config value at the path is a valid string or string
-     * list
+     * Attempt to add a line to a list if the config value at the path is a valid string, string
+     * list or effect. Lines are compiled here so static frames are only formatted once.
      *
-     * @param list   supply list to add to
-     * @param config config to read from
-     * @param path   path of the value in the config
+     * @param lines      list of line definitions to add to
+     * @param supplyList list of compiled lines to add to
+     * @param config     config to read from
+     * @param path       path of the value in the config
+     * @throws IllegalArgumentException if the value is an invalid effect
      */
-    private void addSupply(List<FrameSupply> list, ConfigurationSection config, String path) {
+    private static void addLine(List<Object> lines, List<FrameSupply> supplyList,
+                                ConfigurationSection config, String path) {
         if (config.isString(path)) {
-            list.add(Supply.of(config.getString(path)));
+            lines.add(Lists.newArrayList(config.getString(path)));
+            supplyList.add(Supply.of(new String[]{config.getString(path)}));
         } else if (config.isList(path)) {
-            list.add(Supply.of(config.getStringList(path).toArray(new String[0])));
+            List<String> frames = config.getStringList(path);
+            lines.add(Lists.newArrayList(frames));
+            supplyList.add(Supply.of(frames.toArray(new String[frames.size()])));
+        } else if (config.isConfigurationSection(path)) {
+            ConfigurationSection section = config.getConfigurationSection(path);
+            supplyList.add(createEffect(section));
+            lines.add(section.getValues(false));
+        }
+    }
+
+    /**
+     * Creates a procedurally generated line from its properties in the config
+     *
+     * @throws IllegalArgumentException if the properties are invalid
+     */
+    private static FrameSupply createEffect(ConfigurationSection config) {
+        String effect = config.getString("effect", "");
+        String text = config.getString("text");
+        Preconditions.checkArgument(text != null, "no text property");
+        switch (effect.toLowerCase(Locale.ENGLISH)) {
+            case "marquee":
+                return Supply.marquee(text, config.getInt("width", 16),
+                        config.getString("color", ""));
+            case "wave":
+                return Supply.colorWave(text, config.getInt("band", 1),
+                        parseColors(config.getString("colors", "&c&6&e&a&b&9&d")));
+            case "typewriter":
+                return Supply.typewriter(text, config.getInt("hold", 20));
+            case "blink":
+                return Supply.blink(text, config.getInt("on", 1), config.getInt("off", 1));
+            default:
+                throw new IllegalArgumentException("unknown effect '" + effect + "'");
+        }
+    }
+
+    /**
+     * Reads the colors of formatting codes such as "&c&6&e"
+     */
+    private static ChatColor[] parseColors(String codes) {
+        List<ChatColor> colors = Lists.newArrayList();
+        for (int i = 0; i + 1 < codes.length(); i++) {
+            char c = codes.charAt(i);
+            ChatColor color = ChatColor.getByChar(codes.charAt(i + 1));
+            if ((c == '&' || c == ChatColor.COLOR_CHAR) && color != null && color.isColor()) {
+                colors.add(color);
+                ++i;
+            }
+        }
+        Preconditions.checkArgument(!colors.isEmpty(), "no colors in '" + codes + "'");
+        return colors.toArray(new ChatColor[colors.size()]);
+    }
+
+    /**
+     * Everything read from a config, ready to be applied on the main thread
+     */
+    private static class Parsed {
+        // Element definitions by name
+        private Map<String, Definition> definitions;
+        // Names of the elements in each layout
+        private final Map<String, List<String>> layouts = Maps.newHashMap();
+        // Name of the layout of each world
+        private final Map<String, String> worldLayouts = Maps.newHashMap();
+    }
+
+    /**
+     * The properties of an element as written in the config; compared to find elements that
+     * changed between reloads
+     */
+    private static class Definition {
+        private final int priority;
+        private final long delay;
+        // Frames or effect properties of every line
+        private final List<Object> lines;
+        // Compiled lines; not compared
+        private final List<FrameSupply> supplyList;
+
+        private Definition(int priority, long delay, List<Object> lines,
+                           List<FrameSupply> supplyList) {
+            this.priority = priority;
+            this.delay = delay;
+            this.lines = lines;
+            this.supplyList = supplyList;
+        }
+
+        private ScoreboardElement create(Plugin plugin, String name) {
+            SimpleScoreboardElement element = new SimpleScoreboardElement(plugin, priority, delay,
+                    supplyList);
+            element.setName(name);
+            return element;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Definition)) {
+                return false;
+            }
+            Definition other = (Definition) o;
+            return priority == other.priority && delay == other.delay
+                    && lines.equals(other.lines);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(priority, delay, lines);
         }
     }
 }
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * <P>Watches the plugin data folder and reloads config elements when config.yml is saved.</P>
+ *
+ * <P>Editors often write a file several times when saving it so changes are only reloaded once
+ * no further changes have been seen for the debounce period. A reload is only applied if every
+ * element in the new config is valid; otherwise the errors are logged and players keep seeing
+ * the current elements.</P>
+ */
+final class ConfigWatcher {
+
+    private static final String CONFIG_FILE = "config.yml";
+
+    private final Plugin plugin;
+    private final ConfigElements configElements;
+    // Milliseconds without changes to wait before reloading
+    private final long debounce;
+    private final WatchService watchService;
+
+    public ConfigWatcher(Plugin plugin, ConfigElements configElements) throws IOException {
+        this.plugin = plugin;
+        this.configElements = configElements;
+        this.debounce = Math.max(1L, plugin.getConfig().getLong("watch-config-debounce", 500L));
+        this.watchService = FileSystems.getDefault().newWatchService();
+        plugin.getDataFolder().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, this::watch);
+    }
+
+    /**
+     * Stops watching for changes
+     */
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not stop watching " + CONFIG_FILE, e);
+        }
+    }
+
+    private void watch() {
+        boolean pending = false;
+        try {
+            while (true) {
+                // wait indefinitely for the first change then only until changes stop
+                WatchKey key = pending ? watchService.poll(debounce, TimeUnit.MILLISECONDS)
+                        : watchService.take();
+                if (key == null) {
+                    pending = false;
+                    reload();
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    pending |= context instanceof Path && context.toString().equals(CONFIG_FILE);
+                }
+                if (!key.reset()) {
+                    plugin.getLogger().warning(
+                            "Data folder is no longer accessible; stopped watching " + CONFIG_FILE);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // plugin is disabling
+        }
+    }
+
+    private void reload() {
+        if (!plugin.isEnabled()) {
+            return;
+        }
+
+        configElements.reload(true, success -> {
+            if (success) {
+                plugin.getLogger().info("Reloaded scoreboard elements after " + CONFIG_FILE
+                        + " changed.");
+            }
+        });
+    }
+}
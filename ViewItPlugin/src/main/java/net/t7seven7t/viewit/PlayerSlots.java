@@ -0,0 +1,219 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * <P>Gives every online player a compact integer slot when they join and frees it when they quit.
+ * Per-player state is kept in arrays indexed by slot rather than in maps keyed on players.</P>
+ *
+ * <P>Slots are reused after a player leaves. Every time a slot is freed its generation is
+ * incremented so that state stored for a previous occupant can be recognised as stale without
+ * having to be cleared.</P>
+ */
+final class PlayerSlots implements Listener {
+
+    private final Plugin plugin;
+    // Slot of every player that has one
+    private final Map<Player, Integer> slots;
+    // Slots currently in use
+    private final BitSet used;
+    // Called with the slot of a player that has left
+    private final List<IntConsumer> releaseListeners;
+    // Occupant and generation of every slot; replaced as a whole when it grows
+    private volatile Table table;
+
+    public PlayerSlots(Plugin plugin) {
+        this.plugin = plugin;
+        this.slots = Maps.newConcurrentMap();
+        this.used = new BitSet();
+        this.releaseListeners = Lists.newCopyOnWriteArrayList();
+        this.table = new Table(16);
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        Bukkit.getOnlinePlayers().forEach(this::assign);
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        assign(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+        release(player);
+        // the player is still online during the event; catch a slot assigned from another
+        // thread before they were removed from the server
+        Bukkit.getScheduler().runTask(plugin, () -> release(player));
+    }
+
+    /**
+     * Gets the slot of a player, assigning one if they are online and don't have one yet
+     *
+     * @param player player
+     * @return slot or -1 if the player isn't online
+     */
+    public int get(Player player) {
+        Integer slot = slots.get(player);
+        return slot != null ? slot : assign(player);
+    }
+
+    /**
+     * Gets the slot of a player without assigning one
+     *
+     * @param player player
+     * @return slot or -1 if the player doesn't have one
+     */
+    public int peek(Player player) {
+        Integer slot = slots.get(player);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Gets the player occupying a slot
+     *
+     * @param slot slot
+     * @return player or null if the slot is free
+     */
+    public Player getPlayer(int slot) {
+        Table table = this.table;
+        return slot < table.capacity() ? table.players.get(slot) : null;
+    }
+
+    /**
+     * Gets the generation of a slot. State stored for a slot is only valid while the generation it
+     * was stored with is current.
+     *
+     * @param slot slot
+     * @return generation
+     */
+    public int getGeneration(int slot) {
+        Table table = this.table;
+        return slot < table.capacity() ? table.generations.get(slot) : 0;
+    }
+
+    /**
+     * Gets one more than the highest slot that may be in use; arrays of this size can hold state
+     * for every slot
+     *
+     * @return slot capacity
+     */
+    public int getCapacity() {
+        return table.capacity();
+    }
+
+    /**
+     * Registers a listener called on the main thread with the slot of each player that leaves,
+     * before the slot is reused
+     *
+     * @param listener listener
+     */
+    public void addReleaseListener(IntConsumer listener) {
+        releaseListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addReleaseListener(IntConsumer)}
+     *
+     * @param listener listener
+     */
+    public void removeReleaseListener(IntConsumer listener) {
+        releaseListeners.remove(listener);
+    }
+
+    private synchronized int assign(Player player) {
+        Integer existing = slots.get(player);
+        if (existing != null) {
+            return existing;
+        } else if (!player.isOnline()) {
+            return -1;
+        }
+
+        int slot = used.nextClearBit(0);
+        Table table = this.table;
+        if (slot >= table.capacity()) {
+            table = new Table(table, table.capacity() * 2);
+            this.table = table;
+        }
+        used.set(slot);
+        table.players.set(slot, player);
+        slots.put(player, slot);
+        return slot;
+    }
+
+    /**
+     * Frees the slot of a player and tells the release listeners
+     *
+     * @param player player
+     */
+    public synchronized void release(Player player) {
+        Integer slot = slots.remove(player);
+        if (slot == null) {
+            return;
+        }
+
+        releaseListeners.forEach(listener -> listener.accept(slot));
+        Table table = this.table;
+        table.players.set(slot, null);
+        table.generations.incrementAndGet(slot);
+        used.clear(slot);
+    }
+
+    /**
+     * The occupant and generation of every slot. Both arrays always have the same length so
+     * readers on other threads see a consistent capacity.
+     */
+    private static class Table {
+        private final AtomicReferenceArray<Player> players;
+        private final AtomicIntegerArray generations;
+
+        private Table(int capacity) {
+            this.players = new AtomicReferenceArray<>(capacity);
+            this.generations = new AtomicIntegerArray(capacity);
+        }
+
+        /**
+         * Creates a larger copy of a table; only called while holding the lock
+         */
+        private Table(Table table, int capacity) {
+            this(capacity);
+            for (int i = 0; i < table.capacity(); i++) {
+                players.set(i, table.players.get(i));
+                generations.set(i, table.generations.get(i));
+            }
+        }
+
+        private int capacity() {
+            return players.length();
+        }
+    }
+}
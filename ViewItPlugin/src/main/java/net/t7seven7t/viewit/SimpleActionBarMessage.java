@@ -0,0 +1,61 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import net.t7seven7t.viewit.actionbar.ActionBarMessage;
+import net.t7seven7t.viewit.supply.FrameSupply;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ *
+ */
+class SimpleActionBarMessage implements ActionBarMessage {
+
+    // The plugin that created this message
+    private final Plugin plugin;
+    // Priority of this message among those active for the same player
+    private final int priority;
+    // Ticks this message stays active for after being sent
+    private final long duration;
+    // Text to display
+    private final FrameSupply text;
+
+    public SimpleActionBarMessage(Plugin plugin, int priority, long duration, FrameSupply text) {
+        this.plugin = plugin;
+        this.priority = priority;
+        this.duration = duration;
+        this.text = text;
+    }
+
+    @Override
+    public FrameSupply getText() {
+        return text;
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public Plugin getPlugin() {
+        return plugin;
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.MapMaker;
+
+import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.chat.ComponentSerializer;
+import net.t7seven7t.viewit.actionbar.ActionBarMessage;
+import net.t7seven7t.viewit.actionbar.ActionBarService;
+import net.t7seven7t.viewit.replacer.Replacers;
+import net.t7seven7t.viewit.supply.AnimatedFrameSupply;
+import net.t7seven7t.viewit.supply.FrameSupply;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+/**
+ *
+ */
+class SimpleActionBarService implements ActionBarService, Listener {
+
+    // Ticks between resending unchanged text; the client fades action bar text after 60 ticks
+    private static final long RESEND_TICKS = 40L;
+    // Maximum number of distinct texts to keep packets for
+    private static final long PACKET_CACHE_SIZE = 256L;
+    // Reflected members used to send chat packets in the action bar position
+    private static Method getHandle;
+    private static Field playerConnection;
+    private static Method serialize;
+    private static Method sendPacket;
+    private static Constructor<?> packetConstructor;
+    private static boolean supported;
+
+    static {
+        String bukkitVersion = Bukkit.getServer().getClass().getPackage().getName()
+                .substring(23);
+        try {
+            Class<?> craftPlayer = Class
+                    .forName("org.bukkit.craftbukkit." + bukkitVersion + ".entity.CraftPlayer");
+            Class<?> component = Class
+                    .forName("net.minecraft.server." + bukkitVersion + ".IChatBaseComponent");
+            Class<?> serializer = Class.forName("net.minecraft.server." + bukkitVersion
+                    + ".IChatBaseComponent$ChatSerializer");
+            Class<?> packet = Class.forName("net.minecraft.server." + bukkitVersion + ".Packet");
+            Class<?> chatPacket = Class
+                    .forName("net.minecraft.server." + bukkitVersion + ".PacketPlayOutChat");
+            Class<?> entityPlayer = Class
+                    .forName("net.minecraft.server." + bukkitVersion + ".EntityPlayer");
+            Class<?> connection = Class
+                    .forName("net.minecraft.server." + bukkitVersion + ".PlayerConnection");
+            getHandle = craftPlayer.getMethod("getHandle");
+            playerConnection = entityPlayer.getField("playerConnection");
+            serialize = serializer.getMethod("a", String.class);
+            sendPacket = connection.getMethod("sendPacket", packet);
+            packetConstructor = chatPacket.getConstructor(component, byte.class);
+            supported = true;
+        } catch (ReflectiveOperationException e) {
+            ViewItPlugin.getInstance().getLogger()
+                    .warning("Could not obtain chat packet classes; action bar is unavailable.");
+        }
+    }
+
+    // Map of messages and display state for each player
+    private final Map<Player, PlayerState> stateMap;
+    // Packets built once for each distinct text and shared between players
+    private final LoadingCache<String, Object> packets;
+    // Clock message durations and resends are timed by
+    private final TickClock clock;
+    // Ticks each frame of an animated message is shown for
+    private final long frameInterval;
+    // Whether a failure to send a packet has been logged
+    private volatile boolean sendFailureLogged;
+
+    public SimpleActionBarService(Plugin plugin) {
+        this.stateMap = new MapMaker().weakKeys().makeMap();
+        this.clock = ViewItPlugin.getInstance().getTickClock();
+        this.frameInterval = Math.max(1L,
+                plugin.getConfig().getLong("actionbar-frame-interval", 2L));
+        this.packets = CacheBuilder.newBuilder().maximumSize(PACKET_CACHE_SIZE)
+                .build(CacheLoader.from(SimpleActionBarService::createPacket));
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        if (supported) {
+            Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::update, 1L, 1L);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        stateMap.remove(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        Plugin plugin = event.getPlugin();
+        stateMap.values().forEach(
+                state -> state.messages.removeIf(active -> active.message.getPlugin() == plugin));
+    }
+
+    private void update() {
+        stateMap.forEach(this::update);
+    }
+
+    private void update(Player player, PlayerState state) {
+        long tick = clock.getTick();
+        state.messages.removeIf(active -> active.expiry <= tick);
+        ActionBarMessage message = getMessage(player);
+
+        String text;
+        if (message == null) {
+            if (state.lastText == null) {
+                return;
+            }
+            // clear what the client is currently showing
+            text = "";
+        } else {
+            text = ChatColor.translateAlternateColorCodes('&',
+                    Replacers.replace(player, getFrame(message.getText(), player)));
+        }
+
+        // the client fades text in real time however much the server lags
+        long wallTick = clock.getWallTick();
+        if (text.equals(state.lastText) && wallTick - state.lastSent < RESEND_TICKS) {
+            return;
+        }
+
+        try {
+            Object handle = getHandle.invoke(player);
+            Object connection = playerConnection.get(handle);
+            sendPacket.invoke(connection, packets.getUnchecked(text));
+        } catch (ReflectiveOperationException e) {
+            if (!sendFailureLogged) {
+                sendFailureLogged = true;
+                ViewItPlugin.getInstance().getLogger().log(Level.WARNING,
+                        "Could not send action bar packet", e);
+            }
+            return;
+        }
+
+        state.lastText = message == null ? null : text;
+        state.lastSent = wallTick;
+    }
+
+    /**
+     * Gets the frame of a supply shown now. As with scoreboard elements the frame is derived from
+     * the clock alone so every player sees the same frame.
+     */
+    private String getFrame(FrameSupply supply, Player player) {
+        if (supply instanceof AnimatedFrameSupply) {
+            AnimatedFrameSupply animation = (AnimatedFrameSupply) supply;
+            int frameCount = animation.getFrameCount();
+            long step = clock.getAnimationTick() / frameInterval;
+            return animation.getFrame(player, frameCount > 0 ? (int) (step % frameCount) : 0);
+        }
+        return supply.getCurrentFrame(player);
+    }
+
+    /**
+     * Creates a chat packet displaying the text in the action bar
+     */
+    private static Object createPacket(String text) {
+        String json = ComponentSerializer.toString(TextComponent.fromLegacyText(text));
+        try {
+            return packetConstructor.newInstance(serialize.invoke(null, json), (byte) 2);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create action bar packet", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(Player player, ActionBarMessage message) {
+        PlayerState state = stateMap.get(player);
+        if (state == null) {
+            state = new PlayerState();
+            stateMap.put(player, state);
+        }
+
+        long expiry = message.getDuration() > 0 ? clock.getTick() + message.getDuration()
+                : Long.MAX_VALUE;
+        state.messages.removeIf(active -> active.message == message);
+        state.messages.add(new ActiveMessage(message, expiry));
+        state.messages.sort((a, b) -> PRIORITY_COMPARATOR.compare(a.message, b.message));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(Player player, ActionBarMessage message) {
+        PlayerState state = stateMap.get(player);
+        if (state != null) {
+            state.messages.removeIf(active -> active.message == message);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ActionBarMessage getMessage(Player player) {
+        PlayerState state = stateMap.get(player);
+        if (state == null) {
+            return null;
+        }
+
+        long tick = clock.getTick();
+        for (ActiveMessage active : state.messages) {
+            if (active.expiry > tick) {
+                return active.message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A message along with the tick it stops being active
+     */
+    private static class ActiveMessage {
+        private final ActionBarMessage message;
+        private final long expiry;
+
+        private ActiveMessage(ActionBarMessage message, long expiry) {
+            this.message = message;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Active messages for a player and what was last sent to them
+     */
+    private static class PlayerState {
+        // Active messages sorted by priority
+        private final List<ActiveMessage> messages = new CopyOnWriteArrayList<>();
+        // Text last sent to the player or null if nothing is displayed
+        private String lastText;
+        // Wall-clock tick the last text was sent
+        private long lastSent;
+    }
+}
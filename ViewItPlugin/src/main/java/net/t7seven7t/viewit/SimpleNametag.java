@@ -0,0 +1,61 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import net.t7seven7t.viewit.nametag.Nametag;
+import net.t7seven7t.viewit.supply.FrameSupply;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ *
+ */
+class SimpleNametag implements Nametag {
+
+    // The plugin that created this nametag
+    private final Plugin plugin;
+    // Priority of this nametag among those added to the same player
+    private final int priority;
+    // Text displayed before the player's name
+    private final FrameSupply prefix;
+    // Text displayed after the player's name
+    private final FrameSupply suffix;
+
+    public SimpleNametag(Plugin plugin, int priority, FrameSupply prefix, FrameSupply suffix) {
+        this.plugin = plugin;
+        this.priority = priority;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    @Override
+    public FrameSupply getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public FrameSupply getSuffix() {
+        return suffix;
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public Plugin getPlugin() {
+        return plugin;
+    }
+}
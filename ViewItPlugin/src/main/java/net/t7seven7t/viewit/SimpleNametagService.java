@@ -0,0 +1,346 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import net.t7seven7t.viewit.nametag.Nametag;
+import net.t7seven7t.viewit.nametag.NametagService;
+import net.t7seven7t.viewit.replacer.Replacers;
+import net.t7seven7t.viewit.supply.AnimatedFrameSupply;
+import net.t7seven7t.viewit.supply.FrameSupply;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *
+ */
+class SimpleNametagService implements NametagService, Listener {
+
+    public static final String TEAM_PREFIX = "viewit_nt";
+    // Separates the prefix from the suffix in group keys; can't appear in rendered text
+    private static final char KEY_SEPARATOR = '\n';
+    // Map of nametags that have been added to a player
+    private final Map<Player, List<Nametag>> nametagsMap;
+    // Groups of players sharing the same rendered nametag keyed by prefix and suffix
+    private final Map<String, TagGroup> groups;
+    // Group of each player whose nametag renders the same for every viewer
+    private final Map<Player, TagGroup> sharedGroups;
+    // Team membership of every scoreboard that nametags are displayed on
+    private final Map<Scoreboard, BoardState> boards;
+    // Clock animated nametags are timed by
+    private final TickClock clock;
+    // Ticks between updates; animated nametags move on one frame every update
+    private final long interval;
+    // Ids of existing groups; freed ids are reused so team names stay within 16 characters
+    private final BitSet groupIds = new BitSet();
+
+    public SimpleNametagService(Plugin plugin) {
+        this.nametagsMap = new MapMaker().weakKeys().makeMap();
+        this.groups = Maps.newHashMap();
+        this.sharedGroups = Maps.newHashMap();
+        this.boards = Maps.newIdentityHashMap();
+        this.clock = ViewItPlugin.getInstance().getTickClock();
+        this.interval = Math.max(1L, plugin.getConfig().getLong("nametag-tick-interval", 20L));
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::update, 1L, interval);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        clearNametags(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        Plugin plugin = event.getPlugin();
+        nametagsMap.values().forEach(list -> list.removeIf(tag -> tag.getPlugin() == plugin));
+    }
+
+    private void update() {
+        Collection<? extends Player> players = Bukkit.getOnlinePlayers();
+
+        // players sharing a scoreboard (eg. the main scoreboard) share its teams too
+        Map<Scoreboard, Player> viewerBoards = Maps.newIdentityHashMap();
+        players.forEach(viewer -> viewerBoards.putIfAbsent(viewer.getScoreboard(), viewer));
+
+        Iterator<Map.Entry<Scoreboard, BoardState>> it = boards.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Scoreboard, BoardState> entry = it.next();
+            if (!viewerBoards.containsKey(entry.getKey())) {
+                // nobody is looking at this scoreboard anymore
+                entry.getValue().clear();
+                it.remove();
+            }
+        }
+
+        List<BoardState> states = Lists.newArrayList();
+        viewerBoards.forEach((board, viewer) -> {
+            BoardState state = boards.get(board);
+            if (state == null) {
+                state = new BoardState(board);
+                boards.put(board, state);
+                sharedGroups.forEach(state::move);
+            }
+            state.viewer = viewer;
+            state.removeUntagged();
+            states.add(state);
+        });
+        sharedGroups.keySet().removeIf(target -> getNametag(target) == null);
+
+        // rounded like scoreboard elements since this task may run just before or after the tick
+        long step = (clock.getAnimationTick() + interval / 2) / interval;
+        for (Player target : players) {
+            Nametag nametag = getNametag(target);
+            if (nametag == null) {
+                continue;
+            }
+
+            String prefix = getFrame(nametag.getPrefix(), target, step);
+            String suffix = getFrame(nametag.getSuffix(), target, step);
+            if (Replacers.isRecipientDependent(prefix) || Replacers.isRecipientDependent(suffix)) {
+                sharedGroups.remove(target);
+                for (BoardState state : states) {
+                    state.move(target, getGroup(target, state.viewer, prefix, suffix));
+                }
+            } else {
+                // render once and only touch the teams of each scoreboard if it changed
+                TagGroup group = getGroup(target, target, prefix, suffix);
+                if (sharedGroups.put(target, group) != group) {
+                    states.forEach(state -> state.move(target, group));
+                }
+            }
+        }
+
+        Iterator<TagGroup> groupIt = groups.values().iterator();
+        while (groupIt.hasNext()) {
+            TagGroup group = groupIt.next();
+            if (group.members == 0) {
+                // no scoreboard has a team for this group anymore so its name can be reused
+                groupIt.remove();
+                groupIds.clear(group.id);
+            }
+        }
+        // forget dropped groups everywhere so a reused id is never shared by two groups
+        sharedGroups.values().removeIf(group -> group.members == 0);
+    }
+
+    /**
+     * Gets the frame of a supply shown at an animation step. As with scoreboard elements the frame
+     * is derived from the step alone so every player sees the same frame.
+     */
+    private String getFrame(FrameSupply supply, Player target, long step) {
+        if (supply instanceof AnimatedFrameSupply) {
+            AnimatedFrameSupply animation = (AnimatedFrameSupply) supply;
+            int frameCount = animation.getFrameCount();
+            return animation.getFrame(target, frameCount > 0 ? (int) (step % frameCount) : 0);
+        }
+        return supply.getCurrentFrame(target);
+    }
+
+    /**
+     * Gets the group for a nametag rendered for the recipient, creating it if necessary
+     */
+    private TagGroup getGroup(Player target, Player recipient, String prefix, String suffix) {
+        prefix = fixFormat(Replacers.replace(target, recipient, prefix));
+        suffix = fixFormat(Replacers.replace(target, recipient, suffix));
+        String key = prefix + KEY_SEPARATOR + suffix;
+        TagGroup group = groups.get(key);
+        if (group == null) {
+            int id = groupIds.nextClearBit(0);
+            groupIds.set(id);
+            group = new TagGroup(id, prefix, suffix);
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    /**
+     * Translates formatting codes and trims the result to fit in a team prefix or suffix
+     */
+    private String fixFormat(String string) {
+        string = ChatColor.translateAlternateColorCodes('&', string);
+        if (string.length() > 16) {
+            string = string.substring(0, 16);
+        }
+        if (!string.isEmpty() && string.charAt(string.length() - 1) == ChatColor.COLOR_CHAR) {
+            string = string.substring(0, string.length() - 1);
+        }
+        return string;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addNametag(Player player, Nametag nametag) {
+        List<Nametag> list = nametagsMap.get(player);
+        if (list == null) {
+            list = new CopyOnWriteArrayList<>();
+            nametagsMap.put(player, list);
+        }
+
+        list.add(nametag);
+        list.sort(PRIORITY_COMPARATOR);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeNametag(Player player, Nametag nametag) {
+        List<Nametag> list = nametagsMap.get(player);
+        if (list != null) {
+            list.remove(nametag);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearNametags(Player player) {
+        nametagsMap.remove(player);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Nametag getNametag(Player player) {
+        List<Nametag> list = nametagsMap.get(player);
+        if (list == null) {
+            return null;
+        }
+
+        // iterate a snapshot in case the list is emptied concurrently
+        Iterator<Nametag> it = list.iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Nametag> getNametags(Player player) {
+        List<Nametag> list = nametagsMap.get(player);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Players displaying the same prefix and suffix; backed by one team on each scoreboard
+     */
+    private static class TagGroup {
+        private final int id;
+        private final String teamName;
+        private final String prefix;
+        private final String suffix;
+        // Number of team entries across all scoreboards referring to this group
+        private int members;
+
+        private TagGroup(int id, String prefix, String suffix) {
+            this.id = id;
+            this.teamName = TEAM_PREFIX + Integer.toString(id, Character.MAX_RADIX);
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+    }
+
+    /**
+     * Tracks which group each player is in on a single scoreboard
+     */
+    private class BoardState {
+        private final Scoreboard board;
+        private final Map<Player, TagGroup> members;
+        // A player viewing this scoreboard; used for recipient dependent nametags
+        private Player viewer;
+
+        private BoardState(Scoreboard board) {
+            this.board = board;
+            this.members = Maps.newHashMap();
+            // remove teams left over from a previous instance of the service
+            Lists.newArrayList(board.getTeams()).stream()
+                    .filter(t -> t.getName().startsWith(TEAM_PREFIX)).forEach(Team::unregister);
+        }
+
+        /**
+         * Moves a player into the team for a group, or out of their team if group is null
+         */
+        private void move(Player target, TagGroup group) {
+            TagGroup old = group == null ? members.remove(target) : members.put(target, group);
+            if (old == group) {
+                return;
+            }
+
+            String entry = target.getName();
+            if (old != null) {
+                Team team = board.getTeam(old.teamName);
+                if (team != null) {
+                    team.removeEntry(entry);
+                    if (team.getSize() == 0) {
+                        team.unregister();
+                    }
+                }
+                --old.members;
+            }
+
+            if (group != null) {
+                Team team = board.getTeam(group.teamName);
+                if (team == null) {
+                    team = board.registerNewTeam(group.teamName);
+                    team.setPrefix(group.prefix);
+                    team.setSuffix(group.suffix);
+                }
+                team.addEntry(entry);
+                ++group.members;
+            }
+        }
+
+        /**
+         * Removes players from their teams if they no longer have a nametag
+         */
+        private void removeUntagged() {
+            Lists.newArrayList(members.keySet()).stream()
+                    .filter(target -> getNametag(target) == null)
+                    .forEach(target -> move(target, null));
+        }
+
+        /**
+         * Removes every player from their team on this scoreboard
+         */
+        private void clear() {
+            Lists.newArrayList(members.keySet()).forEach(target -> move(target, null));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import net.t7seven7t.viewit.scoreboard.ScoreboardBatch;
+import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
+
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ */
+class SimpleScoreboardBatch implements ScoreboardBatch {
+
+    // Service the batch is committed to
+    private final SimpleScoreboardService service;
+    // Elements removed from and added to each player
+    final Map<Player, Changes> changes = Maps.newLinkedHashMap();
+    // New priority of each element
+    final Map<ScoreboardElement, Integer> priorities = Maps.newLinkedHashMap();
+    // Run on the main thread once the batch has been applied or null if there's nothing to run
+    Runnable applied;
+    private boolean committed;
+
+    SimpleScoreboardBatch(SimpleScoreboardService service) {
+        this.service = service;
+    }
+
+    @Override
+    public ScoreboardBatch addElements(Player player, ScoreboardElement... elements) {
+        checkNotCommitted();
+        Changes playerChanges = changes.computeIfAbsent(player, p -> new Changes());
+        for (ScoreboardElement element : elements) {
+            playerChanges.remove.remove(element);
+            playerChanges.add.add(element);
+        }
+        return this;
+    }
+
+    @Override
+    public ScoreboardBatch removeElements(Player player, ScoreboardElement... elements) {
+        checkNotCommitted();
+        Changes playerChanges = changes.computeIfAbsent(player, p -> new Changes());
+        for (ScoreboardElement element : elements) {
+            playerChanges.add.remove(element);
+            playerChanges.remove.add(element);
+        }
+        return this;
+    }
+
+    @Override
+    public ScoreboardBatch setPriority(ScoreboardElement element, int priority) {
+        checkNotCommitted();
+        priorities.put(element, priority);
+        return this;
+    }
+
+    @Override
+    public void commit() {
+        checkNotCommitted();
+        committed = true;
+        service.commit(this);
+    }
+
+    @Override
+    public void commit(Runnable applied) {
+        this.applied = applied;
+        commit();
+    }
+
+    private void checkNotCommitted() {
+        if (committed) {
+            throw new IllegalStateException("Batch has already been committed");
+        }
+    }
+
+    /**
+     * Elements removed from and added to a single player
+     */
+    static class Changes {
+        final Set<ScoreboardElement> remove = Sets.newLinkedHashSet();
+        final Set<ScoreboardElement> add = Sets.newLinkedHashSet();
+    }
+}
@@ -13,48 +13,99 @@
  */
 package net.t7seven7t.viewit;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
-import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import net.t7seven7t.viewit.replacer.Replacer;
 import net.t7seven7t.viewit.replacer.Replacers;
+import net.t7seven7t.viewit.replacer.Template;
+import net.t7seven7t.viewit.scoreboard.Condition;
 import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
 import net.t7seven7t.viewit.scoreboard.ScoreboardService;
+import net.t7seven7t.viewit.stats.CostTracker;
 import net.t7seven7t.viewit.supply.AnimatedFrameSupply;
+import net.t7seven7t.viewit.supply.CompiledFrameSupply;
 import net.t7seven7t.viewit.supply.FrameSupply;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntConsumer;
 
 /**
  *
  */
 class SimpleScoreboardElement implements ScoreboardElement {
 
+    // Shared by every element so that identical lines are only stored once
+    private static final Interner<String> LINE_INTERNER = Interners.newWeakInterner();
+    // Placeholder values of a line without placeholders
+    private static final String[] NO_VALUES = new String[0];
+    // Rendered contents of an element without lines
+    private static final Rendered NO_LINES = new Rendered(NO_VALUES, new String[0][]);
+
     // The plugin that created this scoreboard element
     private final Plugin plugin;
     // The delay between animation updates in ticks
     private final long updateDelay;
     // Contents to display
     private final List<FrameSupply> contents;
-    // Map of FrameSupplies to tick independently for each player
-    private final Map<Player, List<FrameSupply>> playerContentsMap;
-    // Cached values waiting til next animation update to refresh
-    private final Map<Player, List<String>> cachedContents;
+    // Slots of the players this element is displayed to
+    private final PlayerSlots slots;
+    // Frames and rendered lines of each target player indexed by their slot
+    private volatile PlayerContents[] playerContents;
     // Whether this element represents a scoreboard title
     private final boolean isTitle;
     // Priority of this element that affects its display order
-    private int priority;
-    // The last time in millis when this element updated
-    private long lastUpdate;
+    private volatile int priority;
+    // Condition players must meet to be shown this element
+    private volatile Condition condition = Condition.ALWAYS;
+    // Clock animations are timed by
+    private final TickClock clock;
+    // Where time spent rendering this element is recorded
+    private final CostTracker costs;
+    // Generation and tick of the last time this element updated
+    private volatile long lastUpdate;
+    private volatile long lastUpdateTick;
+    // Number of animation steps since the clock started that are currently shown
+    private volatile long step;
+    // Task updating the animations of this element or null if it isn't animated
+    private BukkitTask task;
+    // Name identifying this element or null if it has none
+    private volatile String name;
+    // Forgets the lines rendered for recipients that leave
+    private final IntConsumer releaseListener = this::release;
 
     public SimpleScoreboardElement(Plugin plugin, int priority, long updateDelay,
                                    List<FrameSupply> contents) {
+        this(plugin, priority, updateDelay, contents, ViewItPlugin.getInstance().getPlayerSlots(),
+                ViewItPlugin.getInstance().getTickClock(),
+                ViewItPlugin.getInstance().getCostTracker());
+
+        // start on a step boundary so elements with the same delay animate in sync
+        long delay = this.updateDelay - clock.getTick() % this.updateDelay;
+        this.task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin,
+                this::updateAnimations, delay, this.updateDelay);
+        slots.addReleaseListener(releaseListener);
+    }
+
+    /**
+     * Creates an element that isn't animated; its contents are only rendered when requested
+     */
+    SimpleScoreboardElement(Plugin plugin, int priority, long updateDelay,
+                            List<FrameSupply> contents, PlayerSlots slots, TickClock clock,
+                            CostTracker costs) {
         this.priority = priority;
         this.contents = Lists.newCopyOnWriteArrayList(contents);
         this.plugin = plugin;
@@ -62,12 +113,29 @@ class SimpleScoreboardElement implements ScoreboardElement {
         this.updateDelay = updateDelay > 0 ? updateDelay : 20L * 10;
         this.isTitle = priority < 0;
 
-        MapMaker mapMaker = new MapMaker().weakKeys();
-        this.playerContentsMap = mapMaker.makeMap();
-        this.cachedContents = mapMaker.makeMap();
+        this.slots = slots;
+        this.playerContents = new PlayerContents[slots.getCapacity()];
+        this.clock = clock;
+        this.costs = costs;
+        this.step = getStep();
+    }
+
+    /**
+     * Gets the current time in nanos if a render is being sampled, otherwise 0
+     */
+    private static long now(long sample) {
+        return sample == 0L ? 0L : System.nanoTime();
+    }
 
-        Bukkit.getScheduler()
-                .runTaskTimerAsynchronously(plugin, this::updateAnimations, 1l, this.updateDelay);
+    @Override
+    public void cancel() {
+        if (task != null) {
+            task.cancel();
+            slots.removeReleaseListener(releaseListener);
+        }
+        synchronized (this) {
+            playerContents = new PlayerContents[0];
+        }
     }
 
     @Override
@@ -85,16 +153,81 @@ class SimpleScoreboardElement implements ScoreboardElement {
         return plugin;
     }
 
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
     @Override
     public List<String> getContents(Player player) {
-        List<String> result = cachedContents.get(player);
-        if (result == null) {
-            result = getFrames(player).stream().map(f -> f.getCurrentFrame(player))
-                    .collect(Collectors.toList());
-            result = Replacers.replace(player, result);
-            cachedContents.put(player, result);
+        return getContents(player, player);
+    }
+
+    @Override
+    public List<String> getContents(Player target, Player recipient) {
+        return Collections.unmodifiableList(Arrays.asList(getRendered(target, recipient).lines));
+    }
+
+    /**
+     * Gets the lines as they should be displayed to the recipient along with any of their
+     * precompiled scoreboard prefixes and suffixes
+     */
+    Rendered getRendered(Player target, Player recipient) {
+        PlayerContents contents = getPlayerContents(target);
+        if (contents.rendered == null || contents.stale) {
+            contents.stale = false;
+            contents.render(target);
+        }
+        return contents.getRendered(target, recipient);
+    }
+
+    /**
+     * Forgets the lines rendered for the player in a slot as a recipient of other targets
+     */
+    private void release(int slot) {
+        for (PlayerContents contents : playerContents) {
+            if (contents != null) {
+                contents.recipients.remove(slot);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of players with stored contents, including contents left by players that
+     * have since left whose slots haven't been reused yet
+     */
+    int getStoredContents() {
+        return (int) Arrays.stream(playerContents).filter(Objects::nonNull).count();
+    }
+
+    /**
+     * Gets the number of lines stored with a template and placeholder values across every player;
+     * static frames shouldn't need either
+     */
+    int getStoredTemplates() {
+        return Arrays.stream(playerContents).filter(Objects::nonNull)
+                .mapToInt(c -> (int) Arrays.stream(c.templates).filter(Objects::nonNull).count())
+                .sum();
+    }
+
+    /**
+     * Renders the target's lines again on the next update if any of them use a placeholder that is
+     * loaded asynchronously; called when such a value changes
+     */
+    void refreshAsync(Player target) {
+        int slot = slots.peek(target);
+        PlayerContents[] array = playerContents;
+        PlayerContents contents = slot >= 0 && slot < array.length ? array[slot] : null;
+        if (contents != null && contents.async && contents.generation == slots
+                .getGeneration(slot)) {
+            contents.stale = true;
+            lastUpdateTick = clock.getTick();
+            lastUpdate = clock.nextGeneration();
         }
-        return result;
     }
 
     @Override
@@ -118,8 +251,10 @@ class SimpleScoreboardElement implements ScoreboardElement {
             // insert
             contents.add(index, supply);
         }
-        cachedContents.clear();
-        playerContentsMap.clear();
+        // under the same lock as storing contents so none for the old lines survive the swap
+        synchronized (this) {
+            playerContents = new PlayerContents[slots.getCapacity()];
+        }
         ScoreboardService.getPlayers(this)
                 .forEach(ScoreboardService.getInstance()::invalidateScores);
     }
@@ -141,47 +276,380 @@ class SimpleScoreboardElement implements ScoreboardElement {
                 .forEach(ScoreboardService.getInstance()::recalculateElementOrder);
     }
 
+    @Override
+    public Condition getCondition() {
+        return condition;
+    }
+
+    @Override
+    public void setCondition(Condition condition) {
+        this.condition = condition == null ? Condition.ALWAYS : condition;
+        ScoreboardService.getPlayers(this)
+                .forEach(ScoreboardService.getInstance()::refreshConditions);
+    }
+
     @Override
     public long lastUpdateMillis() {
+        return clock.toMillis(lastUpdateTick);
+    }
+
+    @Override
+    public long getLastUpdate() {
         return lastUpdate;
     }
 
+    /**
+     * Gets the animation step that should be shown now. Rounds to the nearest step since this
+     * element's task may run just before or after the clock ticks.
+     */
+    private long getStep() {
+        return (clock.getAnimationTick() + updateDelay / 2) / updateDelay;
+    }
+
     private void updateAnimations() {
-        cachedContents.clear();
-        ScoreboardService.getPlayers(this).forEach(this::updateAnimations);
-        lastUpdate = System.currentTimeMillis();
-        // remove values for player keys:
-        cleanPlayerResources();
+        long step = getStep();
+        if (step == this.step) {
+            return;
+        }
+        this.step = step;
+
+        // animations belong to the target so are shared between everyone viewing them
+        ScoreboardService service = ScoreboardService.getInstance();
+        Map<Player, List<Player>> targets = Maps.newHashMap();
+        for (Player viewer : ScoreboardService.getPlayers(this)) {
+            targets.computeIfAbsent(service.getTarget(viewer), t -> Lists.newArrayList())
+                    .add(viewer);
+        }
+
+        boolean changed = false;
+        for (Map.Entry<Player, List<Player>> entry : targets.entrySet()) {
+            Player target = entry.getKey();
+            PlayerContents contents = getPlayerContents(target);
+            changed |= contents.nextFrame(target, step);
+            // lines for other recipients may change even when the target's own lines don't
+            changed |= contents.refreshRecipients(target, entry.getValue());
+        }
+        if (changed) {
+            lastUpdateTick = clock.getTick();
+            lastUpdate = clock.nextGeneration();
+        }
     }
 
-    private List<FrameSupply> getFrames(Player player) {
-        List<FrameSupply> frames = playerContentsMap.get(player);
-        if (frames == null) {
-            frames = contents.stream()
-                    .map(f -> f instanceof AnimatedFrameSupply ? ((AnimatedFrameSupply) f)
-                            .copy() : f)
-                    .collect(Collectors.toList());
-            playerContentsMap.put(player, frames);
+    /**
+     * Gets the contents stored for a player, replacing any left by a previous occupant of their
+     * slot. Players without a slot get contents that aren't stored.
+     */
+    private PlayerContents getPlayerContents(Player player) {
+        int slot = slots.get(player);
+        if (slot < 0) {
+            return new PlayerContents(0, getSize(), step);
         }
 
-        return frames;
+        PlayerContents[] array = playerContents;
+        PlayerContents result = slot < array.length ? array[slot] : null;
+        int generation = slots.getGeneration(slot);
+        if (result == null || result.generation != generation) {
+            synchronized (this) {
+                // the array may have been replaced by setLine since it was read
+                array = playerContents;
+                result = slot < array.length ? array[slot] : null;
+                if (result == null || result.generation != generation) {
+                    result = new PlayerContents(generation, getSize(), step);
+                    if (slot >= array.length) {
+                        array = Arrays.copyOf(array, slots.getCapacity());
+                        playerContents = array;
+                    }
+                    array[slot] = result;
+                }
+            }
+        }
+        return result;
     }
 
-    private void updateAnimations(Player player) {
-        List<FrameSupply> frames = getFrames(player);
-        frames.stream().filter(f -> f instanceof AnimatedFrameSupply)
-                .map(f -> (AnimatedFrameSupply) f)
-                .forEach(a -> a.nextFrame(player));
+    /**
+     * <P>The minimum state needed to display this element to a target player: the frame index of
+     * each line, along with the template and placeholder values each line was last rendered with
+     * so that a line is only rendered again when one of them changes.</P>
+     *
+     * <P>Frames are shared between all players rather than copied. Rendered lines are interned so
+     * players seeing the same text share a single string. Static frames of a {@link
+     * CompiledFrameSupply} aren't rendered at all; their text and precompiled parts are taken
+     * straight from its table.</P>
+     *
+     * <P>Lines are rendered with the target as the recipient; lines using recipient dependent
+     * placeholders are rendered again for each other recipient. What each other recipient sees is
+     * kept until the target's lines or the animation step change, and is only rendered again
+     * where one of the recipient's values changed.</P>
+     */
+    private class PlayerContents {
+        // Generation of the slot these contents belong to
+        private final int generation;
+        // Current frame of each animated line
+        private final int[] frameIndices;
+        // Template and placeholder values of each rendered line; null for static frames
+        private final Template[] templates;
+        private final String[][] values;
+        private volatile Rendered rendered;
+        // Whether any line uses a recipient dependent placeholder
+        private volatile boolean recipientDependent;
+        // Whether any line uses an asynchronously loaded placeholder
+        private volatile boolean async;
+        // Animation step the frames are set to
+        private volatile long frameStep;
+        // Lines of recipient dependent contents as seen by each recipient other than the target
+        // indexed by the recipient's slot
+        private final Map<Integer, RecipientLines> recipients = Maps.newConcurrentMap();
+        // Whether an asynchronously loaded value changed since the lines were rendered
+        private volatile boolean stale;
+
+        private PlayerContents(int generation, int size, long step) {
+            this.generation = generation;
+            this.frameIndices = new int[size];
+            this.templates = new Template[size];
+            this.values = new String[size][];
+            setFrames(step);
+        }
+
+        /**
+         * Moves the animations to a step and renders any lines that changed
+         *
+         * @return true if any line changed
+         */
+        private synchronized boolean nextFrame(Player player, long step) {
+            setFrames(step);
+            return render(player);
+        }
+
+        /**
+         * Sets the frame of each animated line to the one shown at a step. Frames are derived from
+         * the step alone so every player sees the same frame and skipped steps skip frames.
+         */
+        private void setFrames(long step) {
+            frameStep = step;
+            for (int i = 0; i < frameIndices.length && i < contents.size(); i++) {
+                FrameSupply frame = contents.get(i);
+                if (frame instanceof AnimatedFrameSupply) {
+                    int frameCount = ((AnimatedFrameSupply) frame).getFrameCount();
+                    frameIndices[i] = frameCount > 0 ? (int) (step % frameCount) : 0;
+                }
+            }
+        }
+
+        /**
+         * Gets the text of the current frame of a line before placeholders are replaced
+         */
+        private String getFrame(Player player, int line) {
+            FrameSupply frame = contents.get(line);
+            return frame instanceof AnimatedFrameSupply ? ((AnimatedFrameSupply) frame)
+                    .getFrame(player, frameIndices[line]) : frame.getCurrentFrame(player);
+        }
+
+        /**
+         * Renders the lines whose frame or placeholder values have changed
+         *
+         * @return true if any line changed
+         */
+        private synchronized boolean render(Player player) {
+            Rendered previous = rendered;
+            Map<Replacer, String> replaceResults = Maps.newHashMap();
+            String[] lines = null;
+            String[][] parts = null;
+            boolean recipientDependent = false;
+            boolean async = false;
+            // time spent in each phase when this render is sampled
+            long sample = costs.start();
+            long frameNanos = 0L;
+            long replaceNanos = 0L;
+            for (int i = 0; i < templates.length && i < contents.size(); i++) {
+                long time = now(sample);
+                FrameSupply frame = contents.get(i);
+                String[] staticParts = frame instanceof CompiledFrameSupply
+                        ? ((CompiledFrameSupply) frame).getParts(frameIndices[i]) : null;
+                String frameText = getFrame(player, i);
+                frameNanos += now(sample) - time;
+                String text;
+                if (staticParts != null) {
+                    text = frameText;
+                    if (previous != null && templates[i] == null
+                            && previous.parts[i] == staticParts) {
+                        continue;
+                    }
+                    templates[i] = null;
+                    values[i] = null;
+                } else {
+                    time = now(sample);
+                    Template template = Replacers.compile(frameText);
+                    String[] lineValues = template.resolve(player, player, replaceResults);
+                    recipientDependent |= template.isRecipientDependent();
+                    async |= template.isAsync();
+                    if (templates[i] != null && templates[i].getText().equals(template.getText())
+                            && Arrays.equals(values[i], lineValues)) {
+                        replaceNanos += now(sample) - time;
+                        continue;
+                    }
+                    templates[i] = template;
+                    values[i] = lineValues.length == 0 ? NO_VALUES : lineValues;
+                    text = LINE_INTERNER.intern(template.render(lineValues));
+                    replaceNanos += now(sample) - time;
+                }
+
+                if (lines == null) {
+                    lines = previous == null ? new String[templates.length]
+                            : previous.lines.clone();
+                    parts = previous == null ? new String[templates.length][]
+                            : previous.parts.clone();
+                }
+                lines[i] = text;
+                parts[i] = staticParts;
+            }
+
+            if (sample != 0L) {
+                costs.record(SimpleScoreboardElement.this, CostTracker.Phase.FRAME, frameNanos);
+                costs.record(SimpleScoreboardElement.this, CostTracker.Phase.REPLACE,
+                        replaceNanos);
+            }
+            this.recipientDependent = recipientDependent;
+            this.async = async;
+            if (lines == null) {
+                if (previous == null) {
+                    rendered = NO_LINES;
+                }
+                return false;
+            }
+            rendered = new Rendered(lines, parts);
+            return true;
+        }
+
+        /**
+         * Gets the lines as they should be displayed to the recipient
+         */
+        private Rendered getRendered(Player target, Player recipient) {
+            Rendered shared = rendered;
+            if (target == recipient || !recipientDependent) {
+                return shared;
+            }
+
+            int slot = slots.peek(recipient);
+            RecipientLines cached = getRecipientLines(slot);
+            if (cached != null && cached.base == shared && cached.step == frameStep) {
+                return cached.rendered;
+            }
+            return renderFor(target, recipient, slot, cached).rendered;
+        }
+
+        /**
+         * Gets the lines last rendered for the recipient in a slot or null if there are none or
+         * they were rendered for a previous occupant of the slot
+         */
+        private RecipientLines getRecipientLines(int slot) {
+            RecipientLines cached = slot < 0 ? null : recipients.get(slot);
+            return cached != null && cached.generation == slots.getGeneration(slot) ? cached
+                    : null;
+        }
+
+        /**
+         * Brings the lines of every other recipient up to date with the current step and forgets
+         * recipients no longer viewing the target
+         *
+         * @return true if any recipient's lines changed
+         */
+        private boolean refreshRecipients(Player target, List<Player> viewers) {
+            Set<Integer> viewing = Sets.newHashSet();
+            viewers.forEach(viewer -> viewing.add(slots.peek(viewer)));
+            recipients.keySet().retainAll(viewing);
+            if (!recipientDependent) {
+                return false;
+            }
 
-        // Add frames to cache
-        cachedContents.put(player, Replacers.replace(player, playerContentsMap.get(player).stream()
-                .map(f -> f.getCurrentFrame(player)).collect(Collectors.toList())));
+            boolean changed = false;
+            for (Player viewer : viewers) {
+                if (viewer != target) {
+                    int slot = slots.peek(viewer);
+                    RecipientLines cached = getRecipientLines(slot);
+                    RecipientLines updated = renderFor(target, viewer, slot, cached);
+                    changed |= cached == null || updated.rendered != cached.rendered;
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * Resolves the recipient dependent placeholders of the target's lines for a recipient and
+         * renders the lines whose values differ from what the recipient was last shown
+         */
+        private synchronized RecipientLines renderFor(Player target, Player recipient, int slot,
+                                                      RecipientLines cached) {
+            Rendered shared = rendered;
+            // values from before the target's lines last changed can't be compared against
+            boolean reuse = cached != null && cached.base == shared;
+            Map<Replacer, String> replaceResults = Maps.newHashMap();
+            String[][] lineValues = new String[templates.length][];
+            String[] lines = null;
+            for (int i = 0; i < templates.length && i < shared.lines.length; i++) {
+                Template template = templates[i];
+                if (template == null || !template.isRecipientDependent()) {
+                    continue;
+                }
+
+                lineValues[i] = template.resolve(target, recipient, replaceResults);
+                if (reuse && Arrays.equals(cached.values[i], lineValues[i])) {
+                    continue;
+                }
+                if (lines == null) {
+                    lines = (reuse ? cached.rendered.lines : shared.lines).clone();
+                }
+                lines[i] = LINE_INTERNER.intern(template.render(lineValues[i]));
+            }
+
+            Rendered result = lines != null ? new Rendered(lines, shared.parts)
+                    : reuse ? cached.rendered : shared;
+            if (slot < 0) {
+                // recipients without a slot have left so their lines aren't kept
+                return new RecipientLines(0, shared, frameStep, lineValues, result);
+            }
+            RecipientLines updated = new RecipientLines(slots.getGeneration(slot), shared,
+                    frameStep, lineValues, result);
+            recipients.put(slot, updated);
+            return updated;
+        }
     }
 
-    private void cleanPlayerResources() {
-        playerContentsMap.keySet().stream().filter(p -> !p.isOnline())
-                .forEach(playerContentsMap::remove);
-        cachedContents.keySet().stream().filter(p -> !p.isOnline()).forEach(cachedContents::remove);
+    /**
+     * Lines of a target's contents as rendered for another recipient
+     */
+    private static class RecipientLines {
+        // Generation of the recipient's slot
+        private final int generation;
+        // Target's lines these were rendered from
+        private final Rendered base;
+        // Animation step they were rendered at
+        private final long step;
+        // Recipient dependent placeholder values of each line; null for other lines
+        private final String[][] values;
+        private final Rendered rendered;
+
+        private RecipientLines(int generation, Rendered base, long step, String[][] values,
+                               Rendered rendered) {
+            this.generation = generation;
+            this.base = base;
+            this.step = step;
+            this.values = values;
+            this.rendered = rendered;
+        }
     }
 
+    /**
+     * Lines of an element as they should be displayed to a player
+     */
+    static class Rendered {
+        // Unformatted text of each line
+        final String[] lines;
+        // Precompiled scoreboard prefix and suffix of each line or null if it must be split
+        final String[][] parts;
+
+        private Rendered(String[] lines, String[][] parts) {
+            this.lines = lines;
+            this.parts = parts;
+        }
+    }
 }
@@ -15,11 +15,16 @@ package net.t7seven7t.viewit;
 
 import net.t7seven7t.viewit.scoreboard.ScoreboardService;
 
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
 import org.bukkit.plugin.Plugin;
 
 /**
@@ -28,9 +33,11 @@ import org.bukkit.plugin.Plugin;
 class SimpleScoreboardListener implements Listener {
 
     private final Plugin plugin;
+    private final SimpleScoreboardService service;
 
-    public SimpleScoreboardListener(Plugin plugin) {
+    public SimpleScoreboardListener(Plugin plugin, SimpleScoreboardService service) {
         this.plugin = plugin;
+        this.service = service;
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
@@ -45,4 +52,21 @@ class SimpleScoreboardListener implements Listener {
         ScoreboardService.getInstance().removePlayer(event.getPlayer());
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        service.refreshConditions(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerGameModeChange(PlayerGameModeChangeEvent event) {
+        // the new gamemode is only applied after the event
+        Player player = event.getPlayer();
+        Bukkit.getScheduler().runTask(plugin, () -> service.refreshConditions(player));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        service.removePlugin(event.getPlugin());
+    }
+
 }
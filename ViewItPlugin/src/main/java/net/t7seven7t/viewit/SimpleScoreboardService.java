@@ -13,12 +13,19 @@
  */
 package net.t7seven7t.viewit;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import net.t7seven7t.viewit.replacer.Replacers;
+import net.t7seven7t.viewit.scoreboard.Condition;
+import net.t7seven7t.viewit.scoreboard.ScoreboardBatch;
 import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
 import net.t7seven7t.viewit.scoreboard.ScoreboardService;
+import net.t7seven7t.viewit.scoreboard.ScoreboardText;
+import net.t7seven7t.viewit.stats.CostTracker;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -30,51 +37,270 @@ import org.bukkit.scoreboard.Scoreboard;
 import org.bukkit.scoreboard.Team;
 
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 
 /**
+ * <P>Each player's scoreboard is only written by the update task. API calls made from any thread
+ * that change a player's elements enqueue an operation on that player's lock-free queue. At the
+ * start of each update the queue is drained, operations are coalesced so a burst of changes
+ * causes a single sort and redraw, and an immutable snapshot of the player's layout is
+ * published. Readers only ever see published snapshots.</P>
  *
+ * <P>Batches are queued as a whole and handed out to the players they affect before any player is
+ * updated, so every change in a batch is applied in the same update.</P>
+ *
+ * <P>Conditions use the Bukkit API so are tested on the main thread whenever they may have
+ * changed, and the results are queued for the update like any other operation.</P>
+ *
+ * <P>Adding and removing players and toggling visibility swap the player's Bukkit scoreboard so
+ * still happen on the calling thread, which should be the main thread.</P>
  */
 class SimpleScoreboardService implements ScoreboardService {
 
     public static final String DUMMY_PREFIX = "dummy_viewit";
-    // Map of elements that are visible to a player
-    private final Map<Player, List<ScoreboardElement>> elementsMap;
+    private final Plugin plugin;
+    // Slots of tracked players
+    private final PlayerSlots slots;
+    // Where time spent drawing elements is recorded
+    private final CostTracker costs;
     // Map of when elements have last been updated for every player
     private final Map<ScoreboardElement, Long> elementUpdatesMap;
-    // List of players that have toggled their scoreboard visiblity off
-    private final Set<Player> invisibleTo;
-
-    public SimpleScoreboardService(Plugin plugin) {
-        this.elementsMap = new MapMaker().weakKeys().makeMap();
+    // Last update of each element as read by the current pass; only used by the update task
+    private final Map<ScoreboardElement, Long> passUpdates = Maps.newHashMap();
+    // Elements added to any player indexed by the plugin that created them
+    private final Map<Plugin, Set<ScoreboardElement>> pluginElements;
+    // Conditions of elements that don't keep their own
+    private final Map<ScoreboardElement, Condition> conditions;
+    // State of every tracked player indexed by their slot
+    private volatile PlayerState[] states;
+    // Committed batches waiting to be applied by the next update
+    private final Queue<SimpleScoreboardBatch> batches = new ConcurrentLinkedQueue<>();
+
+    public SimpleScoreboardService(Plugin plugin, PlayerSlots slots) {
+        this.plugin = plugin;
+        this.slots = slots;
+        this.costs = ViewItPlugin.getInstance().getCostTracker();
         this.elementUpdatesMap = new MapMaker().makeMap();
-        this.invisibleTo = Sets.newConcurrentHashSet();
-        Bukkit.getPluginManager().registerEvents(new SimpleScoreboardListener(plugin), plugin);
+        this.pluginElements = new MapMaker().makeMap();
+        this.conditions = new MapMaker().weakKeys().makeMap();
+        this.states = new PlayerState[slots.getCapacity()];
+        slots.addReleaseListener(this::release);
+        Replacers.addChangeListener(this::refreshAsync);
+        Bukkit.getPluginManager()
+                .registerEvents(new SimpleScoreboardListener(plugin, this), plugin);
         Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::update, 1L,
                 plugin.getConfig().getLong("scoreboard-tick-interval", 1L));
     }
 
     private void update() {
-        Bukkit.getOnlinePlayers().forEach(this::update);
-        elementsMap.values()
-                .forEach(list -> list
-                        .forEach(element -> elementUpdatesMap
-                                .put(element, element.lastUpdateMillis())));
+        long start = costs.isEnabled() ? System.nanoTime() : 0L;
+        List<Runnable> applied = Lists.newArrayList();
+        SimpleScoreboardBatch batch;
+        while ((batch = batches.poll()) != null) {
+            applyBatch(batch);
+            if (batch.applied != null) {
+                applied.add(batch.applied);
+            }
+        }
+
+        PlayerState[] states = this.states;
+        for (int slot = 0; slot < states.length; slot++) {
+            PlayerState state = states[slot];
+            Player player = slots.getPlayer(slot);
+            if (state != null && player != null) {
+                applyOperations(player, state);
+                update(player, state);
+            }
+        }
+
+        // record what was read before drawing so updates made while drawing aren't missed
+        elementUpdatesMap.putAll(passUpdates);
+        passUpdates.clear();
+        // every player's layout now reflects the batches, so nothing they removed is drawn again
+        if (!applied.isEmpty()) {
+            Bukkit.getScheduler().runTask(plugin, () -> applied.forEach(Runnable::run));
+        }
+        if (start != 0L) {
+            costs.recordUpdate(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Queues the changes of a batch to every player it affects
+     */
+    private void applyBatch(SimpleScoreboardBatch batch) {
+        // priority changes queue a reorder to everyone viewing the element
+        batch.priorities.forEach(ScoreboardElement::setPriority);
+        batch.changes.forEach((player, changes) -> enqueue(player,
+                new Operation(Operation.Type.ELEMENTS, toArray(changes.remove),
+                        toArray(changes.add))));
+    }
+
+    /**
+     * Applies every operation queued for a player since the last update and publishes the
+     * resulting layout
+     */
+    private void applyOperations(Player player, PlayerState state) {
+        Layout layout = state.layout;
+        List<ScoreboardElement> elements = null;
+        boolean reorder = false;
+        boolean conditions = false;
+        boolean invalidate = false;
+        Operation operation;
+        while ((operation = state.operations.poll()) != null) {
+            switch (operation.type) {
+                case ELEMENTS:
+                    if (elements == null) {
+                        elements = Lists.newArrayList(layout.elements);
+                    }
+                    elements.removeAll(Arrays.asList(operation.remove));
+                    for (ScoreboardElement element : operation.add) {
+                        if (!elements.contains(element)) {
+                            elements.add(element);
+                        }
+                    }
+                    reorder = conditions = true;
+                    break;
+                case REORDER:
+                    reorder = true;
+                    break;
+                case CONDITIONS:
+                    conditions = true;
+                    break;
+                case INVALIDATE:
+                    invalidate = true;
+                    break;
+            }
+        }
+
+        if (invalidate) {
+            clearScores(player, state);
+        }
+        if (!reorder && !conditions) {
+            return;
+        }
+
+        if (elements == null) {
+            elements = Lists.newArrayList(layout.elements);
+        }
+        if (reorder) {
+            elements.sort(PRIORITY_COMPARATOR);
+        }
+        Set<ScoreboardElement> hidden = conditions ? getHidden(player, state, elements)
+                : layout.hidden;
+        if (elements.equals(layout.elements) && hidden.equals(layout.hidden)) {
+            return;
+        }
+
+        state.layout = new Layout(ImmutableList.copyOf(elements), hidden);
+        // unlike invalidating scores only the lines whose text differs are redrawn
+        state.layoutChanged = true;
+        if (elements.isEmpty()) {
+            // nothing left to show; stop taking over the player's scoreboard
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (getState(player) == state && state.layout.elements.isEmpty()
+                        && state.operations.isEmpty()) {
+                    removePlayer(player);
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the elements whose condition the player didn't meet when last tested on the main
+     * thread. Elements that haven't been tested yet are hidden until they are.
+     */
+    private Set<ScoreboardElement> getHidden(Player player, PlayerState state,
+                                             List<ScoreboardElement> elements) {
+        Map<ScoreboardElement, Boolean> results = state.conditionResults;
+        Set<ScoreboardElement> hidden = Sets.newIdentityHashSet();
+        boolean untested = false;
+        for (ScoreboardElement element : elements) {
+            if (element.getCondition() == Condition.ALWAYS) {
+                continue;
+            }
+
+            Boolean shown = results.get(element);
+            untested |= shown == null;
+            if (shown == null || !shown) {
+                hidden.add(element);
+            }
+        }
+        if (untested) {
+            requestConditions(player, state);
+        }
+        return hidden.isEmpty() ? Collections.emptySet() : hidden;
     }
 
-    private void update(Player player) {
-        List<ScoreboardElement> elements = getElements(player);
+    /**
+     * Tests the conditions of the player's elements, including those waiting to be added, and
+     * queues the results to be applied by the next update. Must be called on the main thread since
+     * conditions use the Bukkit API.
+     */
+    private void testConditions(Player player, PlayerState state) {
+        Set<ScoreboardElement> elements = Sets.newIdentityHashSet();
+        elements.addAll(state.layout.elements);
+        state.operations.forEach(operation -> elements.addAll(Arrays.asList(operation.add)));
+
+        Map<ScoreboardElement, Boolean> results = Maps.newIdentityHashMap();
+        for (ScoreboardElement element : elements) {
+            Condition condition = element.getCondition();
+            if (condition != Condition.ALWAYS) {
+                results.put(element, test(element, condition, player));
+            }
+        }
+        state.conditionResults = results;
+        state.operations.add(Operation.CONDITIONS);
+    }
 
-        if (elements == null || elements.isEmpty() || !isVisible(player)) {
+    /**
+     * Tests a condition, hiding the element if the condition throws
+     */
+    private boolean test(ScoreboardElement element, Condition condition, Player player) {
+        try {
+            return condition.test(player);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not test the condition of an element of "
+                    + element.getPlugin().getName() + " for " + player.getName()
+                    + "; hiding it", e);
+            return false;
+        }
+    }
+
+    /**
+     * Tests the conditions of the player's elements on the next tick of the main thread unless a
+     * test is already waiting
+     */
+    private void requestConditions(Player player, PlayerState state) {
+        if (state.conditionsRequested.compareAndSet(false, true)) {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                state.conditionsRequested.set(false);
+                if (getState(player) == state) {
+                    testConditions(player, state);
+                }
+            });
+        }
+    }
+
+    private void update(Player player, PlayerState state) {
+        Layout layout = state.layout;
+        List<ScoreboardElement> elements = layout.elements;
+
+        if (elements.isEmpty() || state.invisible) {
             // Player has no elements to show
             return;
         }
 
+        Player target = state.target != null ? state.target : player;
         Scoreboard board = player.getScoreboard();
         Objective objective = board.getObjective(DUMMY_PREFIX);
 
@@ -83,39 +309,42 @@ class SimpleScoreboardService implements ScoreboardService {
             // objective not yet created for this player; will force add all elements to scoreboard
             forceUpdate = true;
             objective = board.registerNewObjective(DUMMY_PREFIX, "dummy");
+            state.title = null;
+        }
+
+        String[] displayed = state.displayed;
+        if (displayed == null) {
+            // nothing is known to be displayed; lines 10 -> 24 are indexed directly by score
+            forceUpdate = true;
+            displayed = new String[25];
+            state.displayed = displayed;
+        }
+
+        if (state.layoutChanged) {
+            // elements were shown or hidden so lines below them may have moved
+            state.layoutChanged = false;
+            forceUpdate = true;
         }
 
         if (objective.getDisplaySlot() != DisplaySlot.SIDEBAR) {
             objective.setDisplaySlot(DisplaySlot.SIDEBAR);
         }
 
-        // title always the last element because of sorting: -ve < +ve
-        ScoreboardElement titleElement = elements.get(elements.size() - 1);
-        if (titleElement.isTitle() && titleElement.getSize() > 0) {
-            String title = fixFormat(titleElement.getContents(player).get(0));
-            if (!title.equals(objective.getDisplayName())) {
-                objective.setDisplayName(title);
+        ScoreboardElement title = layout.title;
+        if (forceUpdate || title != state.titleElement || (title != null && hasUpdate(title))) {
+            String text = title == null || title.getSize() == 0 ? ""
+                    : ScoreboardText.format(getLines(title, target, player)[0]);
+            // only send a display name packet when the text actually changed
+            if (!text.equals(state.title)) {
+                objective.setDisplayName(text);
+                state.title = text;
             }
-        } else if (objective.getDisplayName() != null || !objective.getDisplayName().isEmpty()) {
-            // remove title if there isn't one
-            objective.setDisplayName("");
+            state.titleElement = title;
         }
 
-        // list of elements to remove after; can't remove in iterator for CopyOnWriteArrayList
-        List<ScoreboardElement> removals = null;
         int i = 24; // 24 -> 10 all double digit for less annoying score placement
-        Iterator<ScoreboardElement> it = elements.iterator();
-        while (it.hasNext()) {
-            ScoreboardElement element = it.next();
-
-            if (element.isTitle() || element.getSize() == 0) {
-                continue;
-            }
-
-            if (!element.getPlugin().isEnabled()) {
-                // may cause errors to display so remove this element
-                removals = Optional.ofNullable(removals).orElse(Lists.newArrayList());
-                removals.add(element);
+        for (ScoreboardElement element : layout.body) {
+            if (element.getSize() == 0) {
                 continue;
             }
 
@@ -124,39 +353,62 @@ class SimpleScoreboardService implements ScoreboardService {
                 continue;
             }
 
-            for (String text : element.getContents(player)) {
-                if (i < 10) {
-                    break;
-                }
+            String[] lines;
+            String[][] parts = null;
+            if (element instanceof SimpleScoreboardElement) {
+                SimpleScoreboardElement.Rendered rendered = ((SimpleScoreboardElement) element)
+                        .getRendered(target, player);
+                lines = rendered.lines;
+                parts = rendered.parts;
+            } else {
+                lines = getLines(element, target, player);
+            }
 
+            long start = costs.start();
+            for (int line = 0; line < lines.length && i >= 10; line++) {
                 // set text for current line
-                setLine(board, objective, i, text);
+                setLine(board, objective, displayed, i, lines[line],
+                        parts == null ? null : parts[line]);
                 --i;
             }
+            if (start != 0L) {
+                costs.record(element, CostTracker.Phase.FORMAT, System.nanoTime() - start);
+            }
         }
 
         // clear up scoreboard if nothing there
         while (i >= 10) {
-            removeLine(board, i);
+            removeLine(board, displayed, i);
             --i;
         }
-
-        Optional.ofNullable(removals).ifPresent(r -> r.stream().forEach(elements::remove));
     }
 
     /**
      * Removes a line from the scoreboard
      */
-    private void removeLine(Scoreboard board, int score) {
+    private void removeLine(Scoreboard board, String[] displayed, int score) {
+        if (displayed[score] == null) {
+            return;
+        }
+
+        displayed[score] = null;
         Optional.ofNullable(board.getTeam(DUMMY_PREFIX + score))
                 .ifPresent(team -> team.getEntries().forEach(board::resetScores));
     }
 
     /**
-     * Sets a line on the scoreboard to the text specified (max 30 chars)
+     * Sets a line on the scoreboard to the text specified (max 30 chars). Does nothing if the line
+     * already displays the text.
+     *
+     * @param parts precompiled prefix and suffix of the text or null to split the text here
      */
-    private void setLine(Scoreboard board, Objective objective, int score,
-                         String text) {
+    private void setLine(Scoreboard board, Objective objective, String[] displayed, int score,
+                         String text, String[] parts) {
+        if (text.equals(displayed[score])) {
+            return;
+        }
+
+        displayed[score] = text;
         String teamName = DUMMY_PREFIX + score;
         Team team = board.getTeam(teamName);
 
@@ -167,46 +419,33 @@ class SimpleScoreboardService implements ScoreboardService {
             objective.getScore(entry).setScore(score);
         }
 
-        List<String> parts = splitString(fixFormat(text));
+        if (parts == null) {
+            parts = ScoreboardText.split(ScoreboardText.format(text));
+        }
 
-        team.setPrefix(parts.get(0));
-        team.setSuffix(parts.size() > 1 ? parts.get(1) : "");
+        team.setPrefix(parts[0]);
+        team.setSuffix(parts[1]);
     }
 
     /**
-     * Splits a string into 16 character parts
+     * Gets the lines of an element as displayed to the recipient
      */
-    private List<String> splitString(String string) {
-        if (string.length() <= 16) {
-            return Lists.newArrayList(string);
+    private String[] getLines(ScoreboardElement element, Player target, Player recipient) {
+        if (element instanceof SimpleScoreboardElement) {
+            return ((SimpleScoreboardElement) element).getRendered(target, recipient).lines;
         }
-
-        String part1 = string.substring(0, 16);
-        String part2 = string.substring(16, Math.min(string.length(), 32));
-        char last = part1.charAt(15);
-        char first = part2.charAt(0);
-        // check if split on a color code
-        if (last == 167 && ChatColor.getByChar(first) != null) {
-            part1 = part1.substring(0, 15);
-            part2 = last + part2;
-        }
-
-        // Apply part 1 end color to beginning of part 2
-        String lastColors = ChatColor.getLastColors(part1);
-        if (lastColors.isEmpty()) lastColors = ChatColor.WHITE.toString();
-        part2 = lastColors + part2;
-        part2 = part2.substring(0, Math.min(part2.length(), 16));
-
-        return Lists.newArrayList(part1, part2);
+        List<String> contents = element.getContents(target, recipient);
+        return contents.toArray(new String[contents.size()]);
     }
 
     /**
      * Checks if an element has an update that needs to be applied
      */
     private boolean hasUpdate(ScoreboardElement element) {
+        Long current = passUpdates.computeIfAbsent(element, ScoreboardElement::getLastUpdate);
         Optional<Long> value = Optional.ofNullable(elementUpdatesMap.get(element));
-        // check if time since last recorded update later than the last textual update for element
-        return value.orElse(0L) < element.lastUpdateMillis();
+        // check if the update last drawn is older than the last textual update for element
+        return value.orElse(0L) < current;
     }
 
     /**
@@ -214,16 +453,8 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public ScoreboardElement getTitle(Player player) {
-        return getElements(player).stream().filter(ScoreboardElement::isTitle)
-                .sorted(PRIORITY_COMPARATOR.reversed()).findFirst()
-                .orElse(null);
-    }
-
-    /**
-     * Translates formatting codes to section symbols ready for the client to receive
-     */
-    private String fixFormat(String string) {
-        return ChatColor.translateAlternateColorCodes('&', string);
+        PlayerState state = getState(player);
+        return state == null ? null : state.layout.title;
     }
 
     /**
@@ -235,9 +466,20 @@ class SimpleScoreboardService implements ScoreboardService {
             return;
         }
 
+        int slot = slots.get(player);
+        if (slot < 0) {
+            // player has already left
+            return;
+        }
+
         Scoreboard board = Bukkit.getScoreboardManager().getNewScoreboard();
         player.setScoreboard(board);
-        elementsMap.put(player, new CopyOnWriteArrayList<>());
+        synchronized (this) {
+            if (slot >= states.length) {
+                states = Arrays.copyOf(states, slots.getCapacity());
+            }
+            states[slot] = new PlayerState();
+        }
     }
 
     /**
@@ -245,17 +487,98 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public void removePlayer(Player player) {
-        invalidateScores(player);
-        elementsMap.remove(player);
-        invisibleTo.remove(player);
+        clearScores(player, getState(player));
+        int slot = slots.peek(player);
+        if (slot >= 0) {
+            release(slot);
+        }
         player.setScoreboard(Bukkit.getScoreboardManager().getMainScoreboard());
     }
 
+    /**
+     * Clears all state kept for the player in a slot and stops anyone viewing them
+     */
+    private synchronized void release(int slot) {
+        if (slot >= states.length || states[slot] == null) {
+            return;
+        }
+
+        states[slot] = null;
+        Player player = slots.getPlayer(slot);
+        for (PlayerState state : states) {
+            if (state != null && state.target == player) {
+                state.target = null;
+                state.displayed = null;
+            }
+        }
+    }
+
+    /**
+     * Marks lines of elements shown about the target that use asynchronously loaded placeholders
+     * to be rendered again
+     */
+    private void refreshAsync(Player target) {
+        PlayerState[] states = this.states;
+        for (int slot = 0; slot < states.length; slot++) {
+            PlayerState state = states[slot];
+            Player player = slots.getPlayer(slot);
+            if (state == null || player == null
+                    || (state.target == null ? player : state.target) != target) {
+                continue;
+            }
+
+            for (ScoreboardElement element : state.layout.elements) {
+                if (element instanceof SimpleScoreboardElement) {
+                    ((SimpleScoreboardElement) element).refreshAsync(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every element created by a plugin from all players. Elements of a disabled plugin
+     * are no longer updated and may display errors.
+     */
+    void removePlugin(Plugin plugin) {
+        Set<ScoreboardElement> elements = pluginElements.remove(plugin);
+        if (elements == null) {
+            return;
+        }
+
+        ScoreboardElement[] array = elements.toArray(new ScoreboardElement[elements.size()]);
+        PlayerState[] states = this.states;
+        for (int slot = 0; slot < states.length; slot++) {
+            PlayerState state = states[slot];
+            Player player = slots.getPlayer(slot);
+            // queued additions may not be in the layout yet so every player is sent the removal
+            if (state != null && player != null) {
+                removeElements(player, array);
+            }
+        }
+        elementUpdatesMap.keySet().removeAll(elements);
+    }
+
+    /**
+     * Gets the state of a tracked player or null if they aren't tracked
+     */
+    private PlayerState getState(Player player) {
+        int slot = slots.peek(player);
+        PlayerState[] states = this.states;
+        return slot >= 0 && slot < states.length ? states[slot] : null;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void invalidateScores(Player player) {
+        enqueue(player, Operation.INVALIDATE);
+    }
+
+    /**
+     * Removes every line from the player's scoreboard so that it is drawn from scratch
+     */
+    private void clearScores(Player player, PlayerState state) {
         Scoreboard board = player.getScoreboard();
         // copy just in case of concurrent modification during removal
         List<Objective> objectives = Lists.newArrayList(board.getObjectives());
@@ -264,6 +587,10 @@ class SimpleScoreboardService implements ScoreboardService {
 
         List<Team> teams = Lists.newArrayList(board.getTeams());
         teams.stream().filter(t -> t.getName().startsWith(DUMMY_PREFIX)).forEach(Team::unregister);
+        if (state != null) {
+            state.displayed = null;
+            state.title = null;
+        }
     }
 
     /**
@@ -271,12 +598,16 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public void setVisibility(Player player, boolean visible) {
+        PlayerState state = getState(player);
+        if (state == null) {
+            return;
+        }
+
+        state.invisible = !visible;
         if (visible) {
-            invisibleTo.remove(player);
             player.setScoreboard(Bukkit.getScoreboardManager().getNewScoreboard());
         } else {
-            invisibleTo.add(player);
-            invalidateScores(player);
+            clearScores(player, state);
             player.setScoreboard(Bukkit.getScoreboardManager().getMainScoreboard());
         }
     }
@@ -286,7 +617,24 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public boolean isVisible(Player player) {
-        return hasPlayer(player) && !invisibleTo.contains(player);
+        PlayerState state = getState(player);
+        return state != null && !state.invisible;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Player> getTrackedPlayers() {
+        List<Player> players = Lists.newArrayList();
+        PlayerState[] states = this.states;
+        for (int slot = 0; slot < states.length; slot++) {
+            Player player = slots.getPlayer(slot);
+            if (states[slot] != null && player != null) {
+                players.add(player);
+            }
+        }
+        return players;
     }
 
     /**
@@ -294,7 +642,7 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public boolean hasPlayer(Player player) {
-        return elementsMap.containsKey(player);
+        return getState(player) != null;
     }
 
     /**
@@ -310,14 +658,7 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public void addElements(Player player, ScoreboardElement... elements) {
-        List<ScoreboardElement> list = getElements(player);
-        if (list == null) {
-            addPlayer(player);
-            list = getElements(player);
-        }
-
-        list.addAll(Arrays.asList(elements));
-        recalculateElementOrder(player);
+        swapElements(player, Collections.emptyList(), Arrays.asList(elements));
     }
 
     /**
@@ -333,18 +674,115 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public void removeElements(Player player, ScoreboardElement... elements) {
-        List<ScoreboardElement> list = getElements(player);
-        if (list == null) {
-            // can't remove from player not being tracked
+        swapElements(player, Arrays.asList(elements), Collections.emptyList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recalculateElementOrder(Player player) {
+        enqueue(player, Operation.REORDER);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void swapElements(Player player, Collection<? extends ScoreboardElement> remove,
+                             Collection<? extends ScoreboardElement> add) {
+        if (!add.isEmpty() && !hasPlayer(player)) {
+            addPlayer(player);
+        }
+
+        indexElements(add);
+        enqueue(player, new Operation(Operation.Type.ELEMENTS, toArray(remove), toArray(add)));
+        // on join the elements can be tested now rather than staying hidden for a tick
+        if (Bukkit.isPrimaryThread()
+                && add.stream().anyMatch(e -> e.getCondition() != Condition.ALWAYS)) {
+            refreshConditions(player);
+        }
+    }
+
+    /**
+     * Records the plugin of each element so they can be removed when it disables
+     */
+    private void indexElements(Collection<? extends ScoreboardElement> elements) {
+        for (ScoreboardElement element : elements) {
+            pluginElements.computeIfAbsent(element.getPlugin(), p -> Sets.newConcurrentHashSet())
+                    .add(element);
+        }
+    }
+
+    private static ScoreboardElement[] toArray(Collection<? extends ScoreboardElement> elements) {
+        return elements.toArray(new ScoreboardElement[elements.size()]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScoreboardBatch batch() {
+        return new SimpleScoreboardBatch(this);
+    }
+
+    /**
+     * Queues a batch to be applied on the next update. Players gaining elements are added
+     * straight away so that their state exists by then.
+     */
+    void commit(SimpleScoreboardBatch batch) {
+        batch.changes.forEach((player, changes) -> {
+            if (!changes.add.isEmpty() && !hasPlayer(player)) {
+                addPlayer(player);
+            }
+            indexElements(changes.add);
+        });
+        batches.add(batch);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void refreshConditions(Player player) {
+        PlayerState state = getState(player);
+        if (state == null) {
             return;
+        } else if (Bukkit.isPrimaryThread()) {
+            testConditions(player, state);
+        } else {
+            requestConditions(player, state);
         }
+    }
 
-        Arrays.asList(elements).forEach(list::remove);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Condition getCondition(ScoreboardElement element) {
+        return conditions.getOrDefault(element, Condition.ALWAYS);
+    }
 
-        if (list.isEmpty()) {
-            removePlayer(player);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCondition(ScoreboardElement element, Condition condition) {
+        if (condition == null || condition == Condition.ALWAYS) {
+            conditions.remove(element);
         } else {
-            invalidateScores(player);
+            conditions.put(element, condition);
+        }
+        ScoreboardService.getPlayers(element).forEach(this::refreshConditions);
+    }
+
+    /**
+     * Queues an operation to be applied to the player's layout at the start of the next update
+     */
+    private void enqueue(Player player, Operation operation) {
+        PlayerState state = getState(player);
+        if (state != null) {
+            state.operations.add(operation);
         }
     }
 
@@ -352,14 +790,27 @@ class SimpleScoreboardService implements ScoreboardService {
      * {@inheritDoc}
      */
     @Override
-    public void recalculateElementOrder(Player player) {
-        List<ScoreboardElement> elements = getElements(player);
-        if (elements == null) {
+    public void setTarget(Player viewer, Player target) {
+        PlayerState state = getState(viewer);
+        if (state == null) {
             return;
         }
 
-        elements.sort(PRIORITY_COMPARATOR);
-        invalidateScores(player);
+        target = target == viewer || (target != null && slots.peek(target) < 0) ? null : target;
+        if (state.target != target) {
+            state.target = target;
+            invalidateScores(viewer);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Player getTarget(Player viewer) {
+        PlayerState state = getState(viewer);
+        Player target = state == null ? null : state.target;
+        return target != null ? target : viewer;
     }
 
     /**
@@ -367,6 +818,96 @@ class SimpleScoreboardService implements ScoreboardService {
      */
     @Override
     public List<ScoreboardElement> getElements(Player player) {
-        return elementsMap.get(player);
+        PlayerState state = getState(player);
+        return state == null ? null : state.layout.elements;
+    }
+
+    /**
+     * Everything the service tracks for a single player
+     */
+    private static class PlayerState {
+        // Operations waiting to be applied by the next update
+        private final Queue<Operation> operations = new ConcurrentLinkedQueue<>();
+        // Layout last published by the update task
+        private volatile Layout layout = Layout.EMPTY;
+        // Text last displayed on each line of the scoreboard, indexed by score
+        private volatile String[] displayed;
+        // Player whose information is shown or null if the player views themselves
+        private volatile Player target;
+        // Whether the player has toggled their scoreboard visibility off
+        private volatile boolean invisible;
+        // Whether elements have been shown or hidden since the last update
+        private volatile boolean layoutChanged;
+        // Title element and text last displayed
+        private volatile ScoreboardElement titleElement;
+        private volatile String title;
+        // Whether each element with a condition was shown when last tested on the main thread;
+        // never modified once published
+        private volatile Map<ScoreboardElement, Boolean> conditionResults = Collections.emptyMap();
+        // Whether a test of conditions is waiting to run on the main thread
+        private final AtomicBoolean conditionsRequested = new AtomicBoolean();
+    }
+
+    /**
+     * An immutable snapshot of a player's elements. The title and the elements shown below it are
+     * resolved once when the snapshot is published rather than on every update.
+     */
+    private static class Layout {
+        private static final Layout EMPTY = new Layout(ImmutableList.of(),
+                Collections.emptySet());
+
+        // Elements sorted by priority
+        private final List<ScoreboardElement> elements;
+        // Elements whose condition the player didn't meet when last tested
+        private final Set<ScoreboardElement> hidden;
+        // Shown title with the lowest priority or null if there isn't one
+        private final ScoreboardElement title;
+        // Shown elements that aren't titles sorted by priority
+        private final List<ScoreboardElement> body;
+
+        private Layout(List<ScoreboardElement> elements, Set<ScoreboardElement> hidden) {
+            this.elements = elements;
+            this.hidden = hidden;
+            ScoreboardElement title = null;
+            ImmutableList.Builder<ScoreboardElement> body = ImmutableList.builder();
+            for (ScoreboardElement element : elements) {
+                if (hidden.contains(element)) {
+                    continue;
+                }
+                // titles are always last because of sorting: -ve < +ve; the last one is shown
+                if (element.isTitle()) {
+                    title = element;
+                } else {
+                    body.add(element);
+                }
+            }
+            this.title = title;
+            this.body = body.build();
+        }
+    }
+
+    /**
+     * A change to a player's layout waiting to be applied
+     */
+    private static class Operation {
+        private static final ScoreboardElement[] NONE = new ScoreboardElement[0];
+        private static final Operation REORDER = new Operation(Type.REORDER, NONE, NONE);
+        private static final Operation CONDITIONS = new Operation(Type.CONDITIONS, NONE, NONE);
+        private static final Operation INVALIDATE = new Operation(Type.INVALIDATE, NONE, NONE);
+
+        private final Type type;
+        // Elements to remove and then add
+        private final ScoreboardElement[] remove;
+        private final ScoreboardElement[] add;
+
+        private Operation(Type type, ScoreboardElement[] remove, ScoreboardElement[] add) {
+            this.type = type;
+            this.remove = remove;
+            this.add = add;
+        }
+
+        private enum Type {
+            ELEMENTS, REORDER, CONDITIONS, INVALIDATE
+        }
     }
 }
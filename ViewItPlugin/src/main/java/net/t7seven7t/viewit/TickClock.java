@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <P>The single time base of ViewIt. Counts server ticks as they actually run on the main thread
+ * so that every animation, expiry and cache is measured in the same unit no matter which thread
+ * reads it.</P>
+ *
+ * <P>When the server lags fewer ticks run than wall-clock time suggests. Animations either stay
+ * locked to the ticks that ran, slowing down with the server, or catch up by skipping frames to
+ * stay aligned with the wall clock.</P>
+ *
+ * <P>Also hands out generations: a counter that increases every time anything changes, so changes
+ * can be ordered even when several happen in the same tick.</P>
+ */
+class TickClock {
+
+    private static final long NANOS_PER_TICK = TimeUnit.MILLISECONDS.toNanos(50);
+
+    // Time the clock started
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    // Whether animations skip frames under lag to keep up with the wall clock
+    private final boolean catchUp;
+    // Ticks that have run since the clock started; only written by the main thread
+    private volatile long tick;
+    // Last generation handed out
+    private final AtomicLong generation = new AtomicLong();
+
+    TickClock(Plugin plugin) {
+        this.catchUp = !"tick-locked".equalsIgnoreCase(
+                plugin.getConfig().getString("animation-timing", "catch-up"));
+        Bukkit.getScheduler().runTaskTimer(plugin, () -> tick++, 1L, 1L);
+    }
+
+    /**
+     * Gets the number of ticks that have run since ViewIt was enabled
+     */
+    long getTick() {
+        return tick;
+    }
+
+    /**
+     * Gets the number of ticks that would have run since ViewIt was enabled if the server never
+     * lagged
+     */
+    long getWallTick() {
+        return (System.nanoTime() - startNanos) / NANOS_PER_TICK;
+    }
+
+    /**
+     * Gets the tick animations should be showing the frame of
+     */
+    long getAnimationTick() {
+        return catchUp ? Math.max(tick, getWallTick()) : tick;
+    }
+
+    /**
+     * Estimates the time in millis since UNIX time that a tick ran
+     */
+    long toMillis(long tick) {
+        return startMillis + TimeUnit.NANOSECONDS.toMillis(tick * NANOS_PER_TICK);
+    }
+
+    /**
+     * Gets a generation greater than every generation handed out before it
+     */
+    long nextGeneration() {
+        return generation.incrementAndGet();
+    }
+}
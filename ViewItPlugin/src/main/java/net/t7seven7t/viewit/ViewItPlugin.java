@@ -15,33 +15,60 @@
  */
 package net.t7seven7t.viewit;
 
+import net.t7seven7t.viewit.actionbar.ActionBarMessage;
+import net.t7seven7t.viewit.actionbar.ActionBarService;
 import net.t7seven7t.viewit.command.CommandsManager;
+import net.t7seven7t.viewit.nametag.Nametag;
+import net.t7seven7t.viewit.nametag.NametagService;
+import net.t7seven7t.viewit.network.NetworkValues;
+import net.t7seven7t.viewit.preferences.PreferenceStore;
 import net.t7seven7t.viewit.replacer.Replacers;
 import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
 import net.t7seven7t.viewit.scoreboard.ScoreboardService;
+import net.t7seven7t.viewit.stats.CostTracker;
 import net.t7seven7t.viewit.supply.FrameSupply;
 
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 
 public class ViewItPlugin extends JavaPlugin {
 
     // ViewIt instance
     private static ViewItPlugin instance;
+    // Time base of every animation and timer
+    private TickClock tickClock;
+    // Time spent rendering attributed to elements, replacers and plugins
+    private CostTracker costTracker;
+    // Slots given to online players for indexing per-player state
+    private PlayerSlots playerSlots;
     // Default implementation of ScoreboardService
     private ScoreboardService scoreboardService;
+    // Default implementation of NametagService
+    private NametagService nametagService;
+    // Default implementation of ActionBarService
+    private ActionBarService actionBarService;
+    // Preferences players have chosen that are kept between sessions
+    private PreferenceStore preferenceStore;
+    // Values shared by every server on the network
+    private NetworkValues networkValues;
     // Replacers instance
     private Replacers replacers;
     // Commands manager
     private CommandsManager commands;
     // Elements that were defined in the config
     private ConfigElements configElements;
+    // Reloads config elements when the config changes or null if disabled
+    private ConfigWatcher configWatcher;
 
     /**
      * Gets the currently running instance of ViewIt
@@ -60,6 +87,76 @@ public class ViewItPlugin extends JavaPlugin {
         return scoreboardService;
     }
 
+    /**
+     * Gets the default nametag service created by ViewIt. For other instances use Bukkit's
+     * ServiceManager
+     */
+    public NametagService getNametagService() {
+        return nametagService;
+    }
+
+    /**
+     * Gets the default action bar service created by ViewIt. For other instances use Bukkit's
+     * ServiceManager
+     */
+    public ActionBarService getActionBarService() {
+        return actionBarService;
+    }
+
+    /**
+     * Gets the elements and layouts defined in the config
+     */
+    public ConfigElements getConfigElements() {
+        return configElements;
+    }
+
+    /**
+     * Gets the store of player preferences that are kept between sessions
+     */
+    public PreferenceStore getPreferenceStore() {
+        return preferenceStore;
+    }
+
+    /**
+     * Gets the values shared by every server on the network
+     */
+    public NetworkValues getNetworkValues() {
+        return networkValues;
+    }
+
+    /**
+     * Gets the time spent rendering scoreboards attributed to elements, replacers and plugins
+     */
+    public CostTracker getCostTracker() {
+        return costTracker;
+    }
+
+    /**
+     * Gets the clock counting ticks since ViewIt was enabled
+     */
+    TickClock getTickClock() {
+        return tickClock;
+    }
+
+    /**
+     * Gets the slots given to online players
+     */
+    PlayerSlots getPlayerSlots() {
+        return playerSlots;
+    }
+
+    /**
+     * Forgets everything kept for a player the same way as when they quit. Only needed for players
+     * that never joined the server, such as stand-ins used for testing; real players are released
+     * when they quit.
+     */
+    public void releasePlayer(Player player) {
+        if (scoreboardService.hasPlayer(player)) {
+            scoreboardService.removePlayer(player);
+        }
+        playerSlots.release(player);
+    }
+
     @Override
     public void onEnable() {
         super.onEnable();
@@ -72,16 +169,35 @@ public class ViewItPlugin extends JavaPlugin {
         saveDefaultConfig();
         reloadConfig();
 
-        replacers = new Replacers();
-        scoreboardService = new SimpleScoreboardService(this);
+        tickClock = new TickClock(this);
+        costTracker = new CostTracker(this);
+        replacers = new Replacers(this);
+        networkValues = new NetworkValues(this);
+        playerSlots = new PlayerSlots(this);
+        playerSlots.addReleaseListener(slot -> Replacers.release(playerSlots.getPlayer(slot)));
+        scoreboardService = new SimpleScoreboardService(this, playerSlots);
         Bukkit.getServicesManager().register(ScoreboardService.class, scoreboardService, this,
                 ServicePriority.Normal);
+        nametagService = new SimpleNametagService(this);
+        Bukkit.getServicesManager().register(NametagService.class, nametagService, this,
+                ServicePriority.Normal);
+        actionBarService = new SimpleActionBarService(this);
+        Bukkit.getServicesManager().register(ActionBarService.class, actionBarService, this,
+                ServicePriority.Normal);
 
         if (getConfig().getBoolean("track-players-on-join")) {
             Bukkit.getOnlinePlayers().forEach(scoreboardService::addPlayer);
         }
 
+        preferenceStore = new PreferenceStore(this);
         configElements = new ConfigElements(this);
+        if (getConfig().getBoolean("watch-config")) {
+            try {
+                configWatcher = new ConfigWatcher(this, configElements);
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Could not watch the config for changes", e);
+            }
+        }
         commands = new CommandsManager();
     }
 
@@ -99,19 +215,29 @@ public class ViewItPlugin extends JavaPlugin {
     @Override
     public void onDisable() {
         super.onDisable();
+        if (configWatcher != null) {
+            configWatcher.close();
+            configWatcher = null;
+        }
         Bukkit.getOnlinePlayers().forEach(scoreboardService::removePlayer);
         Bukkit.getServicesManager().unregisterAll(this);
+        preferenceStore.close();
+        networkValues.close();
         replacers.reset();
     }
 
     public void reloadConfigElements() {
-        ScoreboardElement[] elements = configElements.getElementsMap().values()
-                .toArray(new ScoreboardElement[configElements.getElementsMap().size()]);
-        Bukkit.getOnlinePlayers()
-                .forEach(player -> scoreboardService.removeElements(player, elements));
-        reloadConfig();
-        configElements.loadFromConfiguration(getConfig());
-        Bukkit.getOnlinePlayers().forEach(configElements::addAllToPlayer);
+        reloadConfigElements(success -> {
+        });
+    }
+
+    /**
+     * Reloads the config in the background and swaps any config elements that changed
+     *
+     * @param callback run on the main thread with whether the config could be reloaded
+     */
+    public void reloadConfigElements(Consumer<Boolean> callback) {
+        configElements.reload(callback);
     }
 
     /**
@@ -122,4 +248,19 @@ public class ViewItPlugin extends JavaPlugin {
                                 List<FrameSupply> contents) {
         return new SimpleScoreboardElement(plugin, priority, updateDelay, contents);
     }
+
+    /**
+     * Creates a Nametag using the default implementation. For more options see {@link Nametag}
+     */
+    public Nametag of(Plugin plugin, int priority, FrameSupply prefix, FrameSupply suffix) {
+        return new SimpleNametag(plugin, priority, prefix, suffix);
+    }
+
+    /**
+     * Creates an ActionBarMessage using the default implementation. For more options see {@link
+     * ActionBarMessage}
+     */
+    public ActionBarMessage of(Plugin plugin, int priority, long duration, FrameSupply text) {
+        return new SimpleActionBarMessage(plugin, priority, duration, text);
+    }
 }
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.actionbar;
+
+import net.t7seven7t.viewit.ViewItPlugin;
+import net.t7seven7t.viewit.scoreboard.ScoreboardElement.Priority;
+import net.t7seven7t.viewit.supply.FrameSupply;
+import net.t7seven7t.viewit.supply.Supply;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * A message shown in the action bar above a player's hotbar. When several messages are active for
+ * a player only the one with the highest priority is displayed.
+ */
+public interface ActionBarMessage {
+
+    /**
+     * Returns an ActionBarMessage of the specified frame
+     *
+     * @param plugin   Plugin that plans to send the message
+     * @param priority Priority of this message. Only the active message with the highest priority
+     *                 is displayed to a player.
+     * @param duration Ticks the message stays active after being sent. Zero or less keeps it
+     *                 active until it is removed.
+     * @param text     Frame to display
+     */
+    static ActionBarMessage of(Plugin plugin, int priority, long duration, FrameSupply text) {
+        return ViewItPlugin.getInstance().of(plugin, priority, duration, text);
+    }
+
+    /**
+     * Returns an ActionBarMessage of the specified frame
+     *
+     * @param plugin   Plugin that plans to send the message
+     * @param priority Priority of this message
+     * @param duration Ticks the message stays active after being sent
+     * @param text     Frame to display
+     * @see ActionBarMessage#of(Plugin, int, long, FrameSupply)
+     */
+    static ActionBarMessage of(Plugin plugin, Priority priority, long duration, FrameSupply text) {
+        return of(plugin, priority.intValue(), duration, text);
+    }
+
+    /**
+     * Returns an ActionBarMessage of the specified text
+     *
+     * @param plugin   Plugin that plans to send the message
+     * @param priority Priority of this message
+     * @param duration Ticks the message stays active after being sent
+     * @param text     Text to display
+     * @see ActionBarMessage#of(Plugin, int, long, FrameSupply)
+     */
+    static ActionBarMessage of(Plugin plugin, Priority priority, long duration, String text) {
+        return of(plugin, priority.intValue(), duration, Supply.of(text));
+    }
+
+    /**
+     * Gets the frame supplying the text of this message
+     */
+    FrameSupply getText();
+
+    /**
+     * Gets the priority of this message
+     */
+    int getPriority();
+
+    /**
+     * Gets the number of ticks this message stays active after being sent. Zero or less means it
+     * stays active until removed.
+     */
+    long getDuration();
+
+    /**
+     * Gets the plugin that created this message
+     */
+    Plugin getPlugin();
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.actionbar;
+
+import net.t7seven7t.viewit.ViewItPlugin;
+
+import org.bukkit.entity.Player;
+
+import java.util.Comparator;
+
+/**
+ * <P>The action bar service arbitrates between plugins that want to show messages in a player's
+ * action bar. Each player only sees the active {@link ActionBarMessage} with the highest
+ * priority.</P>
+ *
+ * <P>Messages are only sent to the client when the displayed text changes or when the client would
+ * otherwise fade the message out.</P>
+ *
+ * @see ActionBarMessage
+ */
+public interface ActionBarService {
+
+    /**
+     * A comparator that sorts messages by their priority in descending order
+     */
+    Comparator<ActionBarMessage> PRIORITY_COMPARATOR = Comparator
+            .comparingInt(ActionBarMessage::getPriority).reversed();
+
+    /**
+     * Gets the implementation instance of this ActionBarService
+     */
+    static ActionBarService getInstance() {
+        return ViewItPlugin.getInstance().getActionBarService();
+    }
+
+    /**
+     * Activates a message for a player. Sending a message that is already active restarts its
+     * duration.
+     */
+    void send(Player player, ActionBarMessage message);
+
+    /**
+     * Deactivates a message for a player
+     */
+    void remove(Player player, ActionBarMessage message);
+
+    /**
+     * Gets the active message displayed to the player if there is one otherwise null
+     */
+    ActionBarMessage getMessage(Player player);
+}
@@ -17,9 +17,13 @@ import com.sk89q.intake.Command;
 import com.sk89q.intake.Require;
 import com.sk89q.intake.parametric.annotation.Optional;
 
+import net.t7seven7t.viewit.ConfigElements;
 import net.t7seven7t.viewit.ViewItPlugin;
 import net.t7seven7t.viewit.command.annotation.Sender;
+import net.t7seven7t.viewit.replacer.Replacer;
+import net.t7seven7t.viewit.replacer.Replacers;
 import net.t7seven7t.viewit.scoreboard.ScoreboardService;
+import net.t7seven7t.viewit.stats.CostTracker;
 
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
@@ -37,8 +41,8 @@ public class ScoreboardCommands {
             max = 1
     )
     @Require("viewit.scoreboard.toggle")
-    public void toggle(ScoreboardService scoreboardService, @Sender Player player,
-                       @Optional String arg) {
+    public void toggle(ViewItPlugin plugin, ScoreboardService scoreboardService,
+                       @Sender Player player, @Optional String arg) {
         boolean visible;
         if (arg == null) {
             visible = !scoreboardService.isVisible(player);
@@ -46,19 +50,66 @@ public class ScoreboardCommands {
             visible = arg.matches("^(?i)on|true|enable|yes$");
         }
         scoreboardService.setVisibility(player, visible);
+        plugin.getPreferenceStore().setHidden(player.getUniqueId(), !visible);
         player.sendMessage(
                 ChatColor.GOLD + "Your scoreboard will now be " + (visible ? "shown" : "hidden"));
     }
 
+    @Command(
+            aliases = {"layout"},
+            usage = "[name] - Choose a layout or go back to the layout of your world",
+            desc = "Chooses the layout of your scoreboard",
+            max = 1
+    )
+    @Require("viewit.scoreboard.layout")
+    public void layout(ViewItPlugin plugin, @Sender Player player, @Optional String name) {
+        ConfigElements configElements = plugin.getConfigElements();
+        if (name != null && !configElements.getLayoutNames().contains(name)) {
+            player.sendMessage(ChatColor.RED + "There is no layout named " + name
+                    + ". Layouts: " + String.join(", ", configElements.getLayoutNames()));
+            return;
+        }
+
+        configElements.selectLayout(player, name);
+        plugin.getPreferenceStore().setLayout(player.getUniqueId(), name);
+        player.sendMessage(ChatColor.GOLD + (name == null
+                ? "Your scoreboard will now use the layout of your world"
+                : "Your scoreboard will now use the " + name + " layout"));
+    }
+
     @Command(
             aliases = ("reload"),
             desc = "Reloads all scoreboard elements from the config"
     )
     @Require("viewit.scoreboard.reload")
     public void reload(ViewItPlugin plugin, CommandSender sender) {
-        plugin.reloadConfigElements();
-        sender.sendMessage(
-                ChatColor.GOLD + "Scoreboard elements have been reloaded from the config.");
+        plugin.reloadConfigElements(success -> sender.sendMessage(success
+                ? ChatColor.GOLD + "Scoreboard elements have been reloaded from the config."
+                : ChatColor.RED + "Could not reload the config. See the console for details."));
+    }
+
+    @Command(
+            aliases = {"stats"},
+            usage = "[reset] - Show or reset the time spent rendering scoreboards",
+            desc = "Shows which plugins, elements and placeholders cost the most",
+            max = 1
+    )
+    @Require("viewit.scoreboard.stats")
+    public void stats(ViewItPlugin plugin, CommandSender sender, @Optional String arg) {
+        CostTracker costs = plugin.getCostTracker();
+        if (!costs.isEnabled()) {
+            // tripped replacers are still worth showing
+            sender.sendMessage(ChatColor.RED + "Costs aren't being measured. Set stats.mode in "
+                    + "the config to sampled or full.");
+            Replacers.getReplacers().stream().filter(Replacer::isTripped)
+                    .forEach(replacer -> sender.sendMessage(ChatColor.GOLD + "Tripped "
+                            + replacer.getPattern().pattern() + ": " + replacer.getStatus()));
+        } else if ("reset".equalsIgnoreCase(arg)) {
+            costs.reset();
+            sender.sendMessage(ChatColor.GOLD + "Scoreboard costs have been reset.");
+        } else {
+            costs.report(10).forEach(line -> sender.sendMessage(ChatColor.GOLD + line));
+        }
     }
 
 }
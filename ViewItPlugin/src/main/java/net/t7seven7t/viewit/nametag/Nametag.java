@@ -0,0 +1,74 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.nametag;
+
+import net.t7seven7t.viewit.ViewItPlugin;
+import net.t7seven7t.viewit.supply.FrameSupply;
+import net.t7seven7t.viewit.supply.Supply;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * A prefix and suffix displayed around a player's name above their head and in the tab list.
+ * Text is resolved using the same replacers as scoreboard elements. Tags that only make use of
+ * placeholders about the target are rendered once and shared between all viewers.
+ */
+public interface Nametag {
+
+    /**
+     * Returns a Nametag of the specified frames
+     *
+     * @param plugin   Plugin that plans to register the nametag
+     * @param priority Priority of this nametag. Only the nametag with the highest priority is
+     *                 displayed for a player.
+     * @param prefix   Frame to display before the player's name
+     * @param suffix   Frame to display after the player's name
+     */
+    static Nametag of(Plugin plugin, int priority, FrameSupply prefix, FrameSupply suffix) {
+        return ViewItPlugin.getInstance().of(plugin, priority, prefix, suffix);
+    }
+
+    /**
+     * Returns a Nametag of the specified text
+     *
+     * @param plugin   Plugin that plans to register the nametag
+     * @param priority Priority of this nametag
+     * @param prefix   Text to display before the player's name
+     * @param suffix   Text to display after the player's name
+     * @see Nametag#of(Plugin, int, FrameSupply, FrameSupply)
+     */
+    static Nametag of(Plugin plugin, int priority, String prefix, String suffix) {
+        return of(plugin, priority, Supply.of(prefix), Supply.of(suffix));
+    }
+
+    /**
+     * Gets the frame supplying the text displayed before the player's name
+     */
+    FrameSupply getPrefix();
+
+    /**
+     * Gets the frame supplying the text displayed after the player's name
+     */
+    FrameSupply getSuffix();
+
+    /**
+     * Gets the priority of this nametag
+     */
+    int getPriority();
+
+    /**
+     * Gets the plugin that created this nametag
+     */
+    Plugin getPlugin();
+}
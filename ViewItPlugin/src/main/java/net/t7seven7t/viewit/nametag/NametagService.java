@@ -0,0 +1,72 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.nametag;
+
+import net.t7seven7t.viewit.ViewItPlugin;
+
+import org.bukkit.entity.Player;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <P>The nametag service displays {@link Nametag}s for players to every other player on the
+ * server.</P>
+ *
+ * <P>Rather than creating a team for every player on every viewer's scoreboard, players whose
+ * rendered prefix and suffix are identical are placed into the same team. Team membership is only
+ * changed when a player's rendered nametag changes.</P>
+ *
+ * @see Nametag
+ */
+public interface NametagService {
+
+    /**
+     * A comparator that sorts nametags by their priority in descending order
+     */
+    Comparator<Nametag> PRIORITY_COMPARATOR = Comparator.comparingInt(Nametag::getPriority)
+            .reversed();
+
+    /**
+     * Gets the implementation instance of this NametagService
+     */
+    static NametagService getInstance() {
+        return ViewItPlugin.getInstance().getNametagService();
+    }
+
+    /**
+     * Adds a nametag to a player. The nametag with the highest priority is displayed.
+     */
+    void addNametag(Player player, Nametag nametag);
+
+    /**
+     * Removes a nametag from a player
+     */
+    void removeNametag(Player player, Nametag nametag);
+
+    /**
+     * Removes all nametags from a player
+     */
+    void clearNametags(Player player);
+
+    /**
+     * Gets the nametag currently displayed for this player if there is one otherwise null
+     */
+    Nametag getNametag(Player player);
+
+    /**
+     * Gets the list of nametags that are tracked for this player sorted by priority
+     */
+    List<Nametag> getNametags(Player player);
+}
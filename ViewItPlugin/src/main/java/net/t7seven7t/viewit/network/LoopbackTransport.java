@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.network;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <P>Connects transports within a single process so network values can be tested without other
+ * servers. Batches published by one transport are delivered straight away to every other transport
+ * in its group, the same as a batch forwarded to every other server.</P>
+ */
+public class LoopbackTransport implements NetworkTransport {
+
+    // Every transport in the same group, including this one
+    private final List<LoopbackTransport> group;
+    private volatile Consumer<Map<String, String>> receiver;
+
+    /**
+     * Creates a transport in a group of its own
+     */
+    public LoopbackTransport() {
+        this.group = Lists.newCopyOnWriteArrayList();
+        group.add(this);
+    }
+
+    /**
+     * Creates a transport in the same group as another, as if it were another server
+     */
+    public LoopbackTransport(LoopbackTransport peer) {
+        this.group = peer.group;
+        group.add(this);
+    }
+
+    @Override
+    public boolean publish(Map<String, String> values) {
+        Map<String, String> batch = ImmutableMap.copyOf(values);
+        for (LoopbackTransport transport : group) {
+            Consumer<Map<String, String>> receiver = transport.receiver;
+            if (transport != this && receiver != null) {
+                receiver.accept(batch);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void setReceiver(Consumer<Map<String, String>> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void close() {
+        group.remove(this);
+    }
+}
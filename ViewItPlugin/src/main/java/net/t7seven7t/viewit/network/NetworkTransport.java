@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.network;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <P>Carries batches of network values between servers. Implementations may use plugin messaging,
+ * a socket, a message broker or anything else; {@link LoopbackTransport} keeps everything in one
+ * process for testing.</P>
+ *
+ * @see NetworkValues
+ */
+public interface NetworkTransport {
+
+    /**
+     * Most characters a key and its value may have together. Every transport must be able to send
+     * an entry this size.
+     */
+    int MAX_ENTRY_LENGTH = 16384;
+
+    /**
+     * Sends a batch of values to every other server. Called on the main thread.
+     *
+     * @param values values changed since the last batch
+     * @return false if the batch couldn't be sent yet and should be sent again with the next one
+     */
+    boolean publish(Map<String, String> values);
+
+    /**
+     * Sets what batches published by other servers are passed to. The receiver may be called on
+     * any thread.
+     */
+    void setReceiver(Consumer<Map<String, String>> receiver);
+
+    /**
+     * Stops sending and receiving batches
+     */
+    default void close() {
+    }
+}
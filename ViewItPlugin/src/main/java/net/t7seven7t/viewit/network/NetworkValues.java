@@ -0,0 +1,144 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.network;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import net.t7seven7t.viewit.replacer.Replacers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * <P>Values shared by every server on a network, such as the total number of players online.</P>
+ *
+ * <P>Values set on this server are applied locally straight away and held until the next batch,
+ * when every value changed since the last batch is published to the other servers through a
+ * {@link NetworkTransport} at once; only the latest value of each key is sent. Values received from
+ * other servers are stored locally, so placeholders only ever read local memory.</P>
+ *
+ * <P>Every key can be used in text as the placeholder {@code %network_<key>%}.</P>
+ */
+public final class NetworkValues {
+
+    public static final String PLACEHOLDER_PREFIX = "network_";
+    // Keys are used in placeholder patterns so are limited to characters without regex meaning
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_]+");
+
+    // Latest value of every key from any server
+    private final Map<String, String> values;
+    // Values set on this server since the last batch
+    private final Map<String, String> pending;
+    private volatile NetworkTransport transport;
+
+    public NetworkValues(Plugin plugin) {
+        this();
+        Replacers.registerPrefix(PLACEHOLDER_PREFIX, (player, key) -> values.get(key));
+
+        String type = plugin.getConfig().getString("network.transport", "none");
+        if (type.equalsIgnoreCase("plugin-messaging")) {
+            setTransport(new PluginMessageTransport(plugin));
+        } else if (type.equalsIgnoreCase("loopback")) {
+            setTransport(new LoopbackTransport());
+        }
+
+        long interval = Math.max(1L, plugin.getConfig().getLong("network.flush-interval", 20L));
+        Bukkit.getScheduler().runTaskTimer(plugin, this::flush, interval, interval);
+    }
+
+    /**
+     * Creates values that are only published when flushed and can't be used in text
+     */
+    NetworkValues() {
+        this.values = Maps.newConcurrentMap();
+        this.pending = Maps.newConcurrentMap();
+    }
+
+    /**
+     * Sets the transport values are published and received through, closing the previous one
+     *
+     * @param transport transport or null to keep values on this server
+     */
+    public void setTransport(NetworkTransport transport) {
+        NetworkTransport previous = this.transport;
+        if (previous != null) {
+            previous.close();
+        }
+        if (transport != null) {
+            transport.setReceiver(this::receive);
+        }
+        this.transport = transport;
+    }
+
+    /**
+     * Gets the latest value of a key from any server
+     *
+     * @return value or null if no server has set one
+     */
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * Sets a value on this server and publishes it to the others with the next batch
+     *
+     * @throws IllegalArgumentException if the key contains characters other than letters, digits
+     *                                  and underscores or the key and value together are longer
+     *                                  than {@link NetworkTransport#MAX_ENTRY_LENGTH}
+     */
+    public void set(String key, String value) {
+        Preconditions.checkArgument(KEY.matcher(key).matches(), "Invalid network key: %s", key);
+        Preconditions.checkNotNull(value, "value");
+        Preconditions.checkArgument(
+                key.length() + value.length() <= NetworkTransport.MAX_ENTRY_LENGTH,
+                "Value of network key %s is too long to send", key);
+        values.put(key, value);
+        pending.put(key, value);
+    }
+
+    private void receive(Map<String, String> batch) {
+        batch.forEach((key, value) -> {
+            if (KEY.matcher(key).matches() && value != null) {
+                values.put(key, value);
+            }
+        });
+    }
+
+    /**
+     * Publishes every value set since the last batch
+     */
+    void flush() {
+        NetworkTransport transport = this.transport;
+        if (transport == null || pending.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> batch = Maps.newHashMap(pending);
+        if (transport.publish(batch)) {
+            // keep values that were set again while publishing for the next batch
+            batch.forEach(pending::remove);
+        }
+    }
+
+    /**
+     * Stops publishing and receiving values
+     */
+    public void close() {
+        setTransport(null);
+    }
+}
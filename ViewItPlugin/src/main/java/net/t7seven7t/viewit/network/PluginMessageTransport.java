@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.network;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <P>Sends network values to every other server behind BungeeCord using its plugin messaging
+ * channel. Batches are forwarded to all servers, which requires at least one player to be online
+ * on both the sending and receiving server; batches are held until someone is.</P>
+ */
+public class PluginMessageTransport implements NetworkTransport, PluginMessageListener {
+
+    private static final String CHANNEL = "BungeeCord";
+    private static final String SUBCHANNEL = "ViewIt";
+    // Most bytes of values to forward in one message; forwarded data must fit an unsigned short
+    // and always has room for one entry of MAX_ENTRY_LENGTH
+    private static final int MAX_CHUNK_BYTES = 60000;
+
+    private final Plugin plugin;
+    private volatile Consumer<Map<String, String>> receiver;
+
+    public PluginMessageTransport(Plugin plugin) {
+        this.plugin = plugin;
+        Bukkit.getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+        Bukkit.getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+    }
+
+    @Override
+    public boolean publish(Map<String, String> values) {
+        Player player = Iterables.getFirst(Bukkit.getOnlinePlayers(), null);
+        if (player == null) {
+            return false;
+        }
+
+        // split large batches into messages that each fit
+        Map<String, String> chunk = Maps.newHashMap();
+        int bytes = 0;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            // modified UTF-8 uses at most 3 bytes per char plus a 2 byte length
+            int size = 4 + 3 * (entry.getKey().length() + entry.getValue().length());
+            if (bytes + size > MAX_CHUNK_BYTES && !chunk.isEmpty()) {
+                send(player, chunk);
+                chunk.clear();
+                bytes = 0;
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+            bytes += size;
+        }
+        send(player, chunk);
+        return true;
+    }
+
+    private void send(Player player, Map<String, String> values) {
+        ByteArrayDataOutput batch = ByteStreams.newDataOutput();
+        batch.writeInt(values.size());
+        values.forEach((key, value) -> {
+            batch.writeUTF(key);
+            batch.writeUTF(value);
+        });
+        byte[] data = batch.toByteArray();
+
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("Forward");
+        out.writeUTF("ALL");
+        out.writeUTF(SUBCHANNEL);
+        out.writeShort(data.length);
+        out.write(data);
+        player.sendPluginMessage(plugin, CHANNEL, out.toByteArray());
+    }
+
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        Consumer<Map<String, String>> receiver = this.receiver;
+        if (!channel.equals(CHANNEL) || receiver == null) {
+            return;
+        }
+
+        ByteArrayDataInput in = ByteStreams.newDataInput(message);
+        if (!in.readUTF().equals(SUBCHANNEL)) {
+            return;
+        }
+
+        byte[] data = new byte[in.readUnsignedShort()];
+        in.readFully(data);
+        ByteArrayDataInput batch = ByteStreams.newDataInput(data);
+        int size = batch.readInt();
+        Map<String, String> values = Maps.newHashMapWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            values.put(batch.readUTF(), batch.readUTF());
+        }
+        receiver.accept(values);
+    }
+
+    @Override
+    public void setReceiver(Consumer<Map<String, String>> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void close() {
+        Bukkit.getMessenger().unregisterOutgoingPluginChannel(plugin, CHANNEL);
+        Bukkit.getMessenger().unregisterIncomingPluginChannel(plugin, CHANNEL, this);
+    }
+}
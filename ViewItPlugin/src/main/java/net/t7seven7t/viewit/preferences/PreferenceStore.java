@@ -0,0 +1,342 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.preferences;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import net.t7seven7t.viewit.scoreboard.ScoreboardService;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+
+/**
+ * <P>Keeps player preferences between sessions in an append-only log in the plugin data
+ * folder.</P>
+ *
+ * <P>Changes are held in memory and written off the main thread in periodic batches; only the
+ * latest change for each player since the last batch is written. Each record is a whole line so a
+ * line cut short by a crash is simply discarded when the log is next read. Once enough records
+ * have been superseded the log is rewritten to a temporary file which atomically replaces it.</P>
+ *
+ * <P>The log is only read the first time preferences are needed, from an asynchronous task.</P>
+ */
+public final class PreferenceStore implements Listener {
+
+    private static final String FILE_NAME = "preferences.log";
+    private static final char SEPARATOR = '\t';
+
+    private final Plugin plugin;
+    private final Path path;
+    // Number of superseded records to allow in the log before it's compacted
+    private final long compactThreshold;
+    // Latest preferences of every player that has changed them
+    private final Map<UUID, Preferences> preferences;
+    // Preferences changed since the last flush
+    private final Map<UUID, Preferences> pending;
+    // Changes made before the log was read, applied on top of what it contains once it is
+    private final List<Map.Entry<UUID, UnaryOperator<Preferences>>> deferred;
+    // Guards deferred and the moment loaded is set
+    private final Object deferredLock = new Object();
+    // Whether the log has been read into memory
+    private volatile boolean loaded;
+    // Number of records in the log
+    private long records;
+
+    public PreferenceStore(Plugin plugin) {
+        this.plugin = plugin;
+        this.path = plugin.getDataFolder().toPath().resolve(FILE_NAME);
+        this.compactThreshold = plugin.getConfig().getLong("preferences.compact-threshold", 1000L);
+        this.preferences = Maps.newConcurrentMap();
+        this.pending = Maps.newConcurrentMap();
+        this.deferred = Lists.newArrayList();
+        long interval = Math
+                .max(1L, plugin.getConfig().getLong("preferences.flush-interval", 100L));
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flush, interval, interval);
+        Bukkit.getOnlinePlayers().forEach(this::apply);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        apply(event.getPlayer());
+    }
+
+    /**
+     * Applies stored preferences to a player once they've been loaded
+     */
+    private void apply(Player player) {
+        load(player, preferences -> {
+            ScoreboardService service = ScoreboardService.getInstance();
+            if (preferences.isHidden() && service.hasPlayer(player)) {
+                service.setVisibility(player, false);
+            }
+        });
+    }
+
+    /**
+     * Loads the preferences of a player off the main thread
+     *
+     * @param player   player to load preferences for
+     * @param callback run on the main thread with the player's preferences if they're still online
+     */
+    public void load(Player player, Consumer<Preferences> callback) {
+        UUID uuid = player.getUniqueId();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            Preferences result = get(uuid);
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (player.isOnline()) {
+                    callback.accept(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Gets the preferences of a player. Reads the log if it hasn't been read yet so should not be
+     * called on the main thread.
+     */
+    public Preferences get(UUID uuid) {
+        ensureLoaded();
+        return preferences.getOrDefault(uuid, Preferences.DEFAULT);
+    }
+
+    /**
+     * Sets whether a player has hidden their scoreboard
+     */
+    public void setHidden(UUID uuid, boolean hidden) {
+        update(uuid, preferences -> preferences.withHidden(hidden));
+    }
+
+    /**
+     * Sets the layout a player has selected or null to use the default
+     */
+    public void setLayout(UUID uuid, String layout) {
+        update(uuid, preferences -> preferences.withLayout(layout));
+    }
+
+    /**
+     * Changes the preferences of a player; they're written to disk in the next flush. Changes made
+     * before the log has been read are applied to the stored preferences once it is.
+     */
+    public void update(UUID uuid, UnaryOperator<Preferences> operator) {
+        if (!loaded) {
+            synchronized (deferredLock) {
+                if (!loaded) {
+                    deferred.add(Maps.immutableEntry(uuid, operator));
+                    Bukkit.getScheduler().runTaskAsynchronously(plugin, this::ensureLoaded);
+                    return;
+                }
+            }
+        }
+        change(uuid, operator);
+    }
+
+    private void change(UUID uuid, UnaryOperator<Preferences> operator) {
+        Preferences previous = preferences.getOrDefault(uuid, Preferences.DEFAULT);
+        Preferences result = operator.apply(previous);
+        if (!result.equals(previous)) {
+            preferences.put(uuid, result);
+            pending.put(uuid, result);
+        }
+    }
+
+    /**
+     * Writes all pending changes, including any still waiting for the log to be read. Called when
+     * the plugin disables.
+     */
+    public void close() {
+        ensureLoaded();
+        flush();
+    }
+
+    /**
+     * Appends pending changes to the log, compacting it if too many records are superseded
+     */
+    private synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        ensureLoaded();
+        Map<UUID, Preferences> written = Maps.newHashMap(pending);
+        StringBuilder builder = new StringBuilder();
+        written.forEach((uuid, value) -> appendRecord(builder, uuid, value));
+
+        try {
+            write(path, builder, StandardOpenOption.APPEND);
+            records += written.size();
+        } catch (IOException e) {
+            // changes stay pending and are written again by the next flush
+            plugin.getLogger().log(Level.WARNING, "Could not save player preferences", e);
+            return;
+        }
+        // a change made while writing is kept for the next flush
+        written.forEach(pending::remove);
+
+        if (records - preferences.size() > compactThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with a single record for every player with non-default preferences
+     */
+    private void compact() {
+        Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+        StringBuilder builder = new StringBuilder();
+        long count = 0;
+        for (Map.Entry<UUID, Preferences> entry : preferences.entrySet()) {
+            if (!entry.getValue().isDefault()) {
+                appendRecord(builder, entry.getKey(), entry.getValue());
+                ++count;
+            }
+        }
+
+        try {
+            // the log is only replaced once the new one is fully on disk
+            write(temp, builder, StandardOpenOption.TRUNCATE_EXISTING);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            records = count;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not compact player preferences", e);
+        }
+    }
+
+    /**
+     * Writes text to a file and waits for it to reach the disk. If writing fails the file is cut
+     * back to its previous length so a partly written record isn't left for the next write to be
+     * appended to.
+     */
+    private void write(Path file, CharSequence text, StandardOpenOption mode) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, mode)) {
+            long start = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(start);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void appendRecord(StringBuilder builder, UUID uuid, Preferences preferences) {
+        builder.append(uuid).append(SEPARATOR).append(preferences.isHidden() ? '1' : '0')
+                .append(SEPARATOR);
+        if (preferences.getLayout() != null) {
+            builder.append(preferences.getLayout());
+        }
+        builder.append('\n');
+    }
+
+    /**
+     * Reads the log into memory if it hasn't been already, then applies the changes made before it
+     * was read on top of what it contains
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+
+            try {
+                if (Files.exists(path)) {
+                    read();
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not load player preferences", e);
+            }
+            synchronized (deferredLock) {
+                deferred.forEach(entry -> change(entry.getKey(), entry.getValue()));
+                deferred.clear();
+                loaded = true;
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            --end;
+        }
+
+        if (end < bytes.length) {
+            // last record was cut short by a crash; drop it so new records start on a fresh line
+            plugin.getLogger().warning("Discarding incomplete record at the end of " + FILE_NAME);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+                channel.force(false);
+            }
+        }
+
+        Map<UUID, Preferences> stored = Maps.newHashMap();
+        String[] lines = new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n");
+        int invalid = 0;
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = line.split(String.valueOf(SEPARATOR), -1);
+            try {
+                UUID uuid = UUID.fromString(parts[0]);
+                String layout = parts[2].isEmpty() ? null : parts[2];
+                stored.put(uuid, new Preferences(parts[1].equals("1"), layout));
+                ++records;
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                ++invalid;
+            }
+        }
+
+        if (invalid > 0) {
+            plugin.getLogger().warning("Skipped " + invalid + " invalid records in " + FILE_NAME);
+        }
+        preferences.putAll(stored);
+    }
+}
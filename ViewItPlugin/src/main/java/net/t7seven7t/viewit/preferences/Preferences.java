@@ -0,0 +1,77 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.preferences;
+
+import java.util.Objects;
+
+/**
+ * Display choices a player has made that are kept between sessions. Instances are immutable.
+ */
+public final class Preferences {
+
+    /**
+     * Preferences of a player that hasn't changed anything
+     */
+    public static final Preferences DEFAULT = new Preferences(false, null);
+
+    // Whether the player has hidden their scoreboard
+    private final boolean hidden;
+    // Name of the layout the player has selected or null to use the default
+    private final String layout;
+
+    Preferences(boolean hidden, String layout) {
+        this.hidden = hidden;
+        this.layout = layout;
+    }
+
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    public String getLayout() {
+        return layout;
+    }
+
+    public Preferences withHidden(boolean hidden) {
+        return new Preferences(hidden, layout);
+    }
+
+    public Preferences withLayout(String layout) {
+        return new Preferences(hidden, layout);
+    }
+
+    /**
+     * Gets whether these preferences are the same as the default and don't need to be stored
+     */
+    public boolean isDefault() {
+        return equals(DEFAULT);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Preferences)) {
+            return false;
+        }
+        Preferences other = (Preferences) o;
+        return hidden == other.hidden && Objects.equals(layout, other.layout);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hidden, layout);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.replacer;
+
+import com.google.common.collect.MapMaker;
+
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * <P>A replacer whose values are loaded in the background, such as from a database, so that slow
+ * lookups never hold up rendering.</P>
+ *
+ * <P>Values are served stale-while-revalidate: the last loaded value is shown straight away and,
+ * once it is older than the refresh interval, a new one is loaded in the background. Until the
+ * first value arrives the loading text is shown. Loads that don't finish within the configured
+ * timeout are cancelled and the last value is kept. Failed loads are tried again after the refresh
+ * interval rather than on the next render. When a new value differs from the old one only the
+ * lines using it are rendered again.</P>
+ *
+ * <P>Results depend on the target alone so are never recipient dependent.</P>
+ */
+public abstract class AsyncReplacer extends Replacer {
+
+    // Last value loaded for each player
+    private final Map<Player, Entry> entries = new MapMaker().weakKeys().makeMap();
+    // Nanoseconds a value is shown before being loaded again
+    private final long refreshNanos;
+    // Text shown until a value has been loaded
+    private final String loadingText;
+
+    /**
+     * Creates an async replacer using the refresh interval and loading text from the config
+     */
+    public AsyncReplacer(String replace) {
+        this(replace, Replacers.getAsyncRefreshMillis(), Replacers.getAsyncLoadingText());
+    }
+
+    /**
+     * @param refreshMillis milliseconds a value is shown before being loaded again
+     * @param loadingText   text shown until a value has been loaded
+     */
+    public AsyncReplacer(String replace, long refreshMillis, String loadingText) {
+        super(replace, false);
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        this.loadingText = loadingText;
+    }
+
+    /**
+     * Creates an async replacer that runs a blocking function on ViewIt's bounded pool of
+     * placeholder threads
+     */
+    public static AsyncReplacer of(String replace, Function<Player, String> function) {
+        return new AsyncReplacer(replace) {
+            @Override
+            public CompletableFuture<String> load(Player target) {
+                return Replacers.loadAsync(() -> function.apply(target));
+            }
+        };
+    }
+
+    /**
+     * Starts loading the value for a player. Called from ViewIt's update threads so must not
+     * block; do any slow work with {@link Replacers#loadAsync(java.util.concurrent.Callable)}
+     * or on another executor. The future is cancelled if it times out.
+     *
+     * @param target player the value is about
+     * @return future completed with the value
+     */
+    public abstract CompletableFuture<String> load(Player target);
+
+    /**
+     * Gets the last value loaded for the target, starting a new load if it is stale
+     */
+    @Override
+    public final String getResult(Player target, Player recipient) {
+        long now = System.nanoTime();
+        // a new entry is due straight away
+        Entry entry = entries.computeIfAbsent(target, p -> new Entry(now - refreshNanos));
+        // failed loads are only tried again once the refresh interval has passed since they
+        // started, so a broken source isn't called on every render
+        if (now - entry.loadedAt >= refreshNanos && entry.loading.compareAndSet(false, true)) {
+            entry.loadedAt = now;
+            startLoad(target, entry);
+        }
+        return entry.value == null ? loadingText : entry.value;
+    }
+
+    @Override
+    boolean isAsync() {
+        return true;
+    }
+
+    private void startLoad(Player target, Entry entry) {
+        CompletableFuture<String> future;
+        try {
+            future = Replacers.withTimeout(load(target));
+        } catch (RejectedExecutionException e) {
+            // every placeholder thread is busy; try again once this value is due next
+            entry.loading.set(false);
+            return;
+        }
+
+        future.whenComplete((value, error) -> {
+            entry.loading.set(false);
+            if (error != null || value == null) {
+                // keep serving the last value; tried again once the refresh interval passes
+                return;
+            }
+
+            entry.loadedAt = System.nanoTime();
+            if (!value.equals(entry.value)) {
+                entry.value = value;
+                Replacers.valueChanged(target);
+            }
+        });
+    }
+
+    /**
+     * Forgets the value loaded for a player so the next render loads it again
+     */
+    public void invalidate(Player target) {
+        entries.remove(target);
+    }
+
+    /**
+     * The last value loaded for a player
+     */
+    private static class Entry {
+        private volatile String value;
+        // Time in nanos the value was loaded or the last load started
+        private volatile long loadedAt;
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        private Entry(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.replacer;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
+
+import org.bukkit.entity.Player;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * <P>A replacer that resolves its values for many players at once, such as with a single {@code
+ * IN (...)} query rather than one query per player.</P>
+ *
+ * <P>Rendering a line only reads the value stored for the target and records that the target
+ * needs a value. Every batch interval the players recorded since the last batch, across every
+ * element using this replacer, are passed to {@link #getResults(Set)} in one call on ViewIt's
+ * placeholder threads. Until a player's first value arrives the loading text is shown; after that
+ * the last value is shown while the next batch loads. When a value changes only the lines using
+ * it are rendered again.</P>
+ *
+ * <P>Results depend on the target alone so are never recipient dependent.</P>
+ */
+public abstract class BatchReplacer extends Replacer {
+
+    // Last value loaded for each player
+    private final Map<Player, String> values = new MapMaker().weakKeys().makeMap();
+    // Players that needed a value since the last batch
+    private final Set<Player> due = Sets.newConcurrentHashSet();
+    // Whether a batch is being loaded
+    private final AtomicBoolean loading = new AtomicBoolean();
+    // Text shown until a value has been loaded
+    private final String loadingText;
+
+    /**
+     * Creates a batch replacer using the loading text from the config
+     */
+    public BatchReplacer(String replace) {
+        this(replace, Replacers.getAsyncLoadingText());
+    }
+
+    /**
+     * @param loadingText text shown until a value has been loaded
+     */
+    public BatchReplacer(String replace, String loadingText) {
+        super(replace, false);
+        this.loadingText = loadingText;
+    }
+
+    /**
+     * Creates a batch replacer from a function resolving values for a set of players. Named
+     * differently from {@link Replacer#of(String, Function)} since the two erase to the same
+     * signature.
+     */
+    public static BatchReplacer from(String replace,
+                                     Function<Set<Player>, Map<Player, String>> function) {
+        return new BatchReplacer(replace) {
+            @Override
+            public Map<Player, String> getResults(Set<Player> targets) {
+                return function.apply(targets);
+            }
+        };
+    }
+
+    /**
+     * Gets the values for every player in a batch. Called on one of ViewIt's placeholder threads
+     * so may block, but is abandoned after the configured timeout. Players missing from the
+     * result keep their last value.
+     *
+     * @param targets players needing a value
+     * @return value of each player
+     */
+    public abstract Map<Player, String> getResults(Set<Player> targets);
+
+    /**
+     * Gets the last value loaded for the target and records that it needs a value in the next
+     * batch
+     */
+    @Override
+    public final String getResult(Player target, Player recipient) {
+        due.add(target);
+        String value = values.get(target);
+        return value == null ? loadingText : value;
+    }
+
+    @Override
+    boolean isAsync() {
+        return true;
+    }
+
+    /**
+     * Loads values for every player that needed one since the last batch unless the previous
+     * batch is still loading
+     */
+    void refresh() {
+        if (due.isEmpty() || !loading.compareAndSet(false, true)) {
+            return;
+        }
+
+        Set<Player> targets = Sets.newHashSet(due);
+        due.removeAll(targets);
+        targets.removeIf(player -> !player.isOnline());
+        if (targets.isEmpty()) {
+            loading.set(false);
+            return;
+        }
+
+        CompletableFuture<Map<Player, String>> future;
+        try {
+            future = Replacers.loadAsync(() -> getResults(Collections.unmodifiableSet(targets)));
+        } catch (RejectedExecutionException e) {
+            // every placeholder thread is busy; these players are tried again next batch
+            due.addAll(targets);
+            loading.set(false);
+            return;
+        }
+
+        future.whenComplete((results, error) -> {
+            loading.set(false);
+            if (error != null || results == null) {
+                // keep serving the last values
+                return;
+            }
+
+            results.forEach((target, value) -> {
+                if (value != null && !value.equals(values.put(target, value))) {
+                    Replacers.valueChanged(target);
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.replacer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import net.t7seven7t.viewit.Dependency;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import me.clip.placeholderapi.PlaceholderAPI;
+
+/**
+ * <P>Resolves PlaceholderAPI placeholders for ViewIt.</P>
+ *
+ * <P>Every refresh the placeholders a player has used are resolved in one batch and stored, so
+ * rendering a line only reads stored values. Expansions listed as needing the main thread are
+ * resolved there and all others are resolved asynchronously.</P>
+ *
+ * <P>Placeholders that haven't been read for a while, eg. because no line shown to the player uses
+ * them anymore, stop being refreshed and are forgotten, along with players that have none left.
+ * Everything stored for a player is dropped when ViewIt releases them.</P>
+ *
+ * @see Template
+ */
+public class PlaceholderBridge implements Listener {
+
+    // Resolved placeholder values for each player
+    private final Map<Player, Map<String, Value>> valuesMap;
+    // Identifiers of expansions that must be resolved on the main thread
+    private final Set<String> mainThreadExpansions;
+    // Refreshes a placeholder may go unread for before it's forgotten
+    private final int maxIdleRefreshes;
+    // Whether PlaceholderAPI is currently enabled
+    private volatile boolean present;
+
+    public PlaceholderBridge(Plugin plugin) {
+        this.valuesMap = Maps.newConcurrentMap();
+        this.mainThreadExpansions = plugin.getConfig()
+                .getStringList("placeholderapi.main-thread-expansions").stream()
+                .map(String::toLowerCase).collect(Collectors.toSet());
+        this.present = Dependency.PlaceholderAPI.getPlugin().map(Plugin::isEnabled)
+                .orElse(false);
+
+        long interval = Math.max(1L,
+                plugin.getConfig().getLong("placeholderapi.refresh-interval", 20L));
+        long expireAfter = plugin.getConfig().getLong("placeholderapi.expire-after", 600L);
+        this.maxIdleRefreshes = (int) Math.max(1L, expireAfter / interval);
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        Bukkit.getScheduler().runTaskTimer(plugin, () -> refresh(true), interval, interval);
+        Bukkit.getScheduler()
+                .runTaskTimerAsynchronously(plugin, () -> refresh(false), interval, interval);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        if (event.getPlugin().getName().equals(Dependency.PlaceholderAPI.getName())) {
+            present = true;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        if (event.getPlugin().getName().equals(Dependency.PlaceholderAPI.getName())) {
+            present = false;
+            valuesMap.clear();
+        }
+    }
+
+    /**
+     * Forgets every value stored for a player that has left
+     */
+    public void release(Player player) {
+        valuesMap.remove(player);
+    }
+
+    /**
+     * Gets whether PlaceholderAPI is enabled
+     *
+     * @return true if placeholders will be resolved
+     */
+    public boolean isPresent() {
+        return present;
+    }
+
+    /**
+     * Gets the stored value of a placeholder for a player. Placeholders that haven't been seen
+     * before are resolved immediately if they can be on the current thread and are refreshed with
+     * the rest of the player's placeholders from then on.
+     *
+     * @param player      player to resolve the placeholder for
+     * @param placeholder placeholder including its % delimiters
+     * @return value or null if PlaceholderAPI isn't enabled
+     */
+    public String getValue(Player player, String placeholder) {
+        if (!present) {
+            return null;
+        }
+
+        Map<String, Value> values = getValues(player);
+        Value value = values.get(placeholder);
+        if (value == null) {
+            value = new Value();
+            if (!isMainThread(placeholder) || Bukkit.isPrimaryThread()) {
+                resolve(player, Collections.singletonList(placeholder), values);
+                Value resolved = values.get(placeholder);
+                value = resolved == null ? value : resolved;
+            }
+            // otherwise resolved on the next main thread refresh
+            values.putIfAbsent(placeholder, value);
+        }
+        value.idleRefreshes = 0;
+        return value.text;
+    }
+
+    /**
+     * Resolves the stored placeholders of every player that belong on the current thread and
+     * forgets those that haven't been read for too long
+     */
+    private void refresh(boolean mainThread) {
+        if (!present) {
+            return;
+        }
+
+        valuesMap.forEach((player, values) -> {
+            List<String> placeholders = Lists.newArrayList();
+            Iterator<Map.Entry<String, Value>> it = values.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Value> entry = it.next();
+                if (isMainThread(entry.getKey()) != mainThread) {
+                    continue;
+                }
+                if (++entry.getValue().idleRefreshes > maxIdleRefreshes) {
+                    it.remove();
+                } else {
+                    placeholders.add(entry.getKey());
+                }
+            }
+            resolve(player, placeholders, values);
+            if (values.isEmpty()) {
+                // every placeholder expired, including any stored after the player was released
+                valuesMap.remove(player, values);
+            }
+        });
+    }
+
+    /**
+     * Resolves placeholders for a player in a single batch and stores the results
+     */
+    private void resolve(Player player, List<String> placeholders, Map<String, Value> values) {
+        if (placeholders.isEmpty()) {
+            return;
+        }
+
+        List<String> results = PlaceholderAPI.setPlaceholders(player, placeholders);
+        for (int i = 0; i < placeholders.size(); i++) {
+            Value value = values.get(placeholders.get(i));
+            if (value == null) {
+                value = new Value();
+                values.put(placeholders.get(i), value);
+            }
+            value.text = results.get(i);
+        }
+    }
+
+    /**
+     * Gets the values stored for a player, storing an empty map if there are none. Values stored
+     * by a render racing with the player's release expire with the rest of their placeholders.
+     */
+    private Map<String, Value> getValues(Player player) {
+        return valuesMap.computeIfAbsent(player, p -> Maps.newConcurrentMap());
+    }
+
+    /**
+     * Checks whether a placeholder belongs to an expansion that must run on the main thread
+     */
+    private boolean isMainThread(String placeholder) {
+        int end = placeholder.indexOf('_');
+        String identifier = placeholder.substring(1, end < 0 ? placeholder.length() - 1 : end);
+        return mainThreadExpansions.contains(identifier.toLowerCase());
+    }
+
+    /**
+     * Stored value of a placeholder and how long it's gone unread
+     */
+    private static class Value {
+        // Resolved text; empty until first resolved
+        private volatile String text = "";
+        // Refreshes since the value was last read
+        private volatile int idleRefreshes;
+    }
+}
@@ -27,13 +27,27 @@ public abstract class Replacer {
 
     // String to be replaced
     private final Pattern pattern;
+    // Whether the result may differ between recipients viewing the same target
+    private final boolean recipientDependent;
+    // Stops calling this replacer when it keeps failing or running over budget
+    private final ReplacerBreaker breaker;
+    // Millis a call may take before counting as a failure; negative to use the config default
+    private volatile long timeBudgetMillis = -1L;
+    // Failures in a row before this replacer is tripped; negative to use the config default
+    private volatile int maxFailures = -1;
 
     public Replacer(String replace) {
+        this(replace, true);
+    }
+
+    protected Replacer(String replace, boolean recipientDependent) {
         this.pattern = Pattern.compile("%" + replace + "%");
+        this.recipientDependent = recipientDependent;
+        this.breaker = new ReplacerBreaker(recipientDependent);
     }
 
     public static Replacer of(String replace, Function<Player, String> function) {
-        return new Replacer(replace) {
+        return new Replacer(replace, false) {
             @Override
             public String getResult(Player target, Player recipient) {
                 return function.apply(target);
@@ -51,7 +65,7 @@ public abstract class Replacer {
     }
 
     public static Replacer of(String replace, Supplier<String> supplier) {
-        return new Replacer(replace) {
+        return new Replacer(replace, false) {
             @Override
             public String getResult(Player target, Player recipient) {
                 return supplier.get();
@@ -78,4 +92,85 @@ public abstract class Replacer {
         return pattern;
     }
 
+    /**
+     * Gets whether the result of this replacer depends on the recipient as well as the target.
+     * Replacers created from a function of the target alone are not recipient dependent.
+     *
+     * @return true if the result may differ between recipients
+     */
+    public boolean isRecipientDependent() {
+        return recipientDependent;
+    }
+
+    /**
+     * Sets how long a call may take before it counts as a failure towards tripping this replacer
+     *
+     * @param millis time budget in milliseconds or 0 for no limit
+     * @return this replacer
+     */
+    public Replacer setTimeBudget(long millis) {
+        this.timeBudgetMillis = millis;
+        return this;
+    }
+
+    /**
+     * Gets how long a call may take before it counts as a failure, in milliseconds
+     *
+     * @return time budget or 0 for no limit
+     */
+    public long getTimeBudget() {
+        return timeBudgetMillis < 0 ? Replacers.getDefaultTimeBudget() : timeBudgetMillis;
+    }
+
+    /**
+     * Sets how many calls in a row may throw or run over budget before this replacer is tripped.
+     * While tripped the last good value is shown instead of calling it.
+     *
+     * @param maxFailures failures in a row or 0 to never trip
+     * @return this replacer
+     */
+    public Replacer setMaxFailures(int maxFailures) {
+        this.maxFailures = maxFailures;
+        return this;
+    }
+
+    /**
+     * Gets how many calls in a row may throw or run over budget before this replacer is tripped
+     *
+     * @return failures in a row or 0 if it never trips
+     */
+    public int getMaxFailures() {
+        return maxFailures < 0 ? Replacers.getDefaultMaxFailures() : maxFailures;
+    }
+
+    /**
+     * Gets whether this replacer has been tripped so isn't being called
+     *
+     * @return true if last good values are being shown instead
+     */
+    public boolean isTripped() {
+        return breaker.isTripped();
+    }
+
+    /**
+     * Describes whether this replacer is tripped, when it'll be tried again and why it tripped
+     *
+     * @return status
+     */
+    public String getStatus() {
+        return breaker.describe(System.nanoTime());
+    }
+
+    ReplacerBreaker getBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Gets whether values of this replacer are loaded in the background so may change between
+     * renders without the line's frame changing
+     */
+    boolean isAsync() {
+        return false;
+    }
+
 }
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.replacer;
+
+import com.google.common.collect.Maps;
+
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <P>Stops calling a replacer that keeps failing or taking longer than its time budget.</P>
+ *
+ * <P>Once a replacer fails or runs over budget too many times in a row the breaker trips and the
+ * last good value of each target, or of each target and recipient for a recipient dependent
+ * replacer, is served instead of calling it. After a back off a single call
+ * is let through to test it: if that call succeeds the breaker resets, otherwise it trips again
+ * with double the back off, up to a maximum.</P>
+ */
+class ReplacerBreaker {
+
+    // Whether last good values are kept for each recipient of a target rather than once
+    private final boolean recipientDependent;
+    // Last value the replacer returned within budget for each target, by recipient if the
+    // replacer is recipient dependent and otherwise under the target itself
+    private final Map<Player, Map<Player, String>> lastGood = Maps.newConcurrentMap();
+    // Number of failed or over budget calls in a row
+    private volatile int failures;
+    // Time in nanos until which the replacer isn't called; 0 when not tripped
+    private volatile long trippedUntil;
+    // Nanos to back off for the next time the breaker trips
+    private long backoff;
+    // Number of times the breaker has tripped
+    private int trips;
+    // Description of the last failure
+    private String lastFailure;
+
+    ReplacerBreaker(boolean recipientDependent) {
+        this.recipientDependent = recipientDependent;
+    }
+
+    /**
+     * Gets whether the replacer may be called. While tripped only one call is let through once the
+     * back off has passed.
+     */
+    boolean allow(long now) {
+        if (trippedUntil == 0L) {
+            return true;
+        }
+        synchronized (this) {
+            if (trippedUntil == 0L || now < trippedUntil) {
+                return trippedUntil == 0L;
+            }
+            // let a single test call through until it reports back
+            trippedUntil = now + backoff;
+            return true;
+        }
+    }
+
+    /**
+     * Records a call that returned a value
+     *
+     * @param overBudget whether the call took longer than the replacer's time budget
+     * @return true if this call tripped the breaker
+     */
+    boolean success(Player target, Player recipient, String value, boolean overBudget, long now,
+                    int maxFailures) {
+        if (value != null && target != null && recipient != null) {
+            Map<Player, String> values = lastGood.get(target);
+            if (values == null) {
+                values = lastGood.computeIfAbsent(target, t -> Maps.newConcurrentMap());
+            }
+            values.put(recipientDependent ? recipient : target, value);
+        }
+        if (!overBudget && failures == 0 && trippedUntil == 0L) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (!overBudget) {
+                failures = 0;
+                trippedUntil = 0L;
+                backoff = 0L;
+                return false;
+            }
+            lastFailure = "over time budget";
+            return failure(now, maxFailures);
+        }
+    }
+
+    /**
+     * Records a call that threw an exception
+     *
+     * @return true if this call tripped the breaker
+     */
+    synchronized boolean error(Throwable error, long now, int maxFailures) {
+        lastFailure = error.getClass().getSimpleName();
+        return failure(now, maxFailures);
+    }
+
+    private boolean failure(long now, int maxFailures) {
+        if (maxFailures <= 0 || ++failures < maxFailures) {
+            return false;
+        }
+
+        // a failed test call trips the breaker again for longer
+        boolean retest = trippedUntil != 0L;
+        backoff = backoff == 0L ? Replacers.getInitialBackoffNanos()
+                : Math.min(backoff * 2, Replacers.getMaxBackoffNanos());
+        trippedUntil = now + backoff;
+        if (!retest) {
+            trips++;
+        }
+        return !retest;
+    }
+
+    /**
+     * Gets the last good value of a target as seen by a recipient, or null if there isn't one
+     */
+    String getLastGood(Player target, Player recipient) {
+        Map<Player, String> values = target == null ? null : lastGood.get(target);
+        return values == null || recipient == null ? null
+                : values.get(recipientDependent ? recipient : target);
+    }
+
+    /**
+     * Forgets the last good values of a player that has left, both as a target and as a recipient
+     */
+    void release(Player player) {
+        lastGood.remove(player);
+        if (recipientDependent) {
+            lastGood.values().forEach(values -> values.remove(player));
+        }
+    }
+
+    boolean isTripped() {
+        return trippedUntil != 0L;
+    }
+
+    /**
+     * Describes the state of the breaker for the stats output
+     */
+    synchronized String describe(long now) {
+        if (trippedUntil == 0L) {
+            return "ok";
+        }
+        return "tripped, retrying in " + TimeUnit.NANOSECONDS.toSeconds(
+                Math.max(0L, trippedUntil - now)) + "s (" + trips + " trips, last failure: "
+                + lastFailure + ")";
+    }
+}
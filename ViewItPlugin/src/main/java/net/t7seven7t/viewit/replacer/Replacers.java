@@ -13,43 +13,156 @@
  */
 package net.t7seven7t.viewit.replacer;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import net.t7seven7t.viewit.Dependency;
 import net.t7seven7t.viewit.ViewItPlugin;
+import net.t7seven7t.viewit.stats.CostTracker;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import me.clip.placeholderapi.PlaceholderAPI;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 
 /**
  *
  */
 public class Replacers {
 
-    private static final Pattern EMPTY = Pattern.compile("");
+    // Maximum number of distinct templates to keep compiled
+    private static final long TEMPLATE_CACHE_SIZE = 4096L;
     private static List<Replacer> replacerList;
+    // Functions resolving families of placeholders keyed by the prefix they share
+    private static Map<String, BiFunction<Player, String, String>> prefixResolvers;
+    private static PlaceholderBridge placeholderBridge;
+    private static LoadingCache<String, Template> templates;
+    // Called with players whose async placeholder values changed
+    private static final List<Consumer<Player>> changeListeners = Lists
+            .newCopyOnWriteArrayList();
+    // Bounded pool loading async placeholder values
+    private static ExecutorService asyncExecutor;
+    // Abandons async loads that take too long
+    private static ScheduledExecutorService timeoutScheduler;
+    private static long asyncTimeoutMillis;
+    private static long asyncRefreshMillis;
+    private static String asyncLoadingText;
+    private static CostTracker costs;
+    private static long defaultTimeBudget;
+    private static int defaultMaxFailures;
+    private static long initialBackoffNanos;
+    private static long maxBackoffNanos;
 
-    public Replacers() {
-        replacerList = Lists.newArrayList();
+    public Replacers(Plugin plugin) {
+        replacerList = Lists.newCopyOnWriteArrayList();
+        prefixResolvers = Maps.newConcurrentMap();
+        costs = ViewItPlugin.getInstance().getCostTracker();
+        ConfigurationSection breaker = plugin.getConfig().getConfigurationSection(
+                "placeholder-breaker");
+        defaultTimeBudget = breaker == null ? 5L : breaker.getLong("time-budget", 5L);
+        defaultMaxFailures = breaker == null ? 3 : breaker.getInt("max-failures", 3);
+        initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(
+                breaker == null ? 1000L : breaker.getLong("initial-backoff", 1000L));
+        maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(
+                breaker == null ? 60000L : breaker.getLong("max-backoff", 60000L));
+        ConfigurationSection async = plugin.getConfig().getConfigurationSection(
+                "async-placeholders");
+        int threads = async == null ? 4 : async.getInt("threads", 4);
+        int queueSize = async == null ? 1000 : async.getInt("queue-size", 1000);
+        asyncRefreshMillis = async == null ? 5000L : async.getLong("refresh-interval", 5000L);
+        asyncLoadingText = async == null ? "..." : async.getString("loading-text", "...");
+        startLoaders(threads, queueSize,
+                async == null ? 2000L : async.getLong("timeout", 2000L));
+        long batchInterval = async == null ? 100L : async.getLong("batch-interval", 100L);
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, Replacers::refreshBatches,
+                batchInterval, batchInterval);
+        placeholderBridge = new PlaceholderBridge(plugin);
+        templates = CacheBuilder.newBuilder().maximumSize(TEMPLATE_CACHE_SIZE)
+                .build(CacheLoader.from(text -> new Template(text, replacerList)));
 
         // Default replacers:
         registerReplacer(Defaults.NAME);
         registerReplacer(Defaults.PING);
     }
 
+    /**
+     * Starts the threads async placeholder values are loaded on
+     *
+     * @param threads       number of threads loading values
+     * @param queueSize     number of loads that may wait for a thread
+     * @param timeoutMillis milliseconds a load may take before it's cancelled
+     */
+    static void startLoaders(int threads, int queueSize, long timeoutMillis) {
+        asyncTimeoutMillis = timeoutMillis;
+        asyncExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ViewIt Placeholder Loader %d").build());
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("ViewIt Placeholder Timeout").build());
+    }
+
+    /**
+     * Stops the threads async placeholder values are loaded on, interrupting any loads
+     */
+    static void stopLoaders() {
+        asyncExecutor.shutdownNow();
+        timeoutScheduler.shutdownNow();
+    }
+
     public static void registerReplacer(Replacer replacer) {
         replacerList.add(replacer);
+        // templates compiled before now won't know about this replacer
+        templates.invalidateAll();
+    }
+
+    /**
+     * Registers a family of placeholders such as {@code %network_<key>%} that share a prefix and
+     * are resolved by one function of the target and the rest of the placeholder. Keys can be used
+     * without registering each of them, so new keys don't cause every template to be compiled
+     * again.
+     *
+     * @param prefix   start of every placeholder in the family, eg. {@code network_}
+     * @param resolver function of the target and the key following the prefix returning the value
+     *                 or null if there isn't one
+     */
+    public static void registerPrefix(String prefix,
+                                      BiFunction<Player, String, String> resolver) {
+        prefixResolvers.put(prefix, resolver);
+    }
+
+    /**
+     * Gets the compiled template for a message
+     *
+     * @param message message containing placeholders
+     * @return template
+     */
+    public static Template compile(String message) {
+        return templates.getUnchecked(message);
     }
 
     public static List<String> replace(Player recipient, List<String> message) {
@@ -65,48 +178,240 @@ public class Replacers {
         final List<String> result = Lists.newArrayList();
         messages.forEach(
                 message -> result.add(replace(target, recipient, message, replaceResults)));
-        if (Dependency.PlaceholderAPI.isPresent()) {
-            return PlaceholderAPI.setPlaceholders(target, result);
-        }
         return result;
     }
 
     public static String replace(Player target, Player recipient, String message,
                                  Map<Replacer, String> replaceResults) {
-        Matcher m = EMPTY.matcher(message);
-        for (Replacer replacer : replacerList) {
-            m.usePattern(replacer.getPattern());
-            m.reset(message);
-            if (m.find()) {
-                Optional<String> replaceResult = Optional.ofNullable(replaceResults.get(replacer));
-                if (!replaceResult.isPresent()) {
-                    try {
-                        replaceResult = Optional.ofNullable(replacer.getResult(target, recipient));
-                    } catch (NullPointerException e) {
-                        continue;
-                    }
-                    if (!replaceResult.isPresent()) {
-                        continue;
-                    }
-
-                    replaceResults.put(replacer, replaceResult.get());
+        Template template = compile(message);
+        if (template.isConstant()) {
+            return message;
+        }
+        return template.render(template.resolve(target, recipient, replaceResults));
+    }
+
+    public static String replace(Player target, Player recipient, String message) {
+        return replace(target, recipient, message, Maps.newHashMap());
+    }
+
+    /**
+     * Gets the result of a replacer, reusing a previous result for the same target and recipient
+     * if there is one. Replacers that throw or run over their time budget too often are tripped
+     * and their last good value is returned instead of calling them.
+     */
+    static String getResult(Replacer replacer, Player target, Player recipient,
+                            Map<Replacer, String> replaceResults) {
+        String result = replaceResults.get(replacer);
+        if (result != null) {
+            return result;
+        }
+
+        ReplacerBreaker breaker = replacer.getBreaker();
+        long start = System.nanoTime();
+        if (!breaker.allow(start)) {
+            result = breaker.getLastGood(target, recipient);
+        } else {
+            boolean sampled = costs.start() != 0L;
+            try {
+                result = replacer.getResult(target, recipient);
+                long end = System.nanoTime();
+                long budget = TimeUnit.MILLISECONDS.toNanos(replacer.getTimeBudget());
+                boolean overBudget = budget > 0 && end - start > budget;
+                if (breaker.success(target, recipient, result, overBudget, end,
+                        replacer.getMaxFailures())) {
+                    logTrip(replacer, null);
+                }
+            } catch (Throwable e) {
+                // a missing class or a stack overflow only breaks this placeholder, but the JVM
+                // can't be trusted to keep running after other virtual machine errors
+                if (e instanceof VirtualMachineError && !(e instanceof StackOverflowError)) {
+                    throw (VirtualMachineError) e;
+                }
+                if (breaker.error(e, System.nanoTime(), replacer.getMaxFailures())) {
+                    logTrip(replacer, e);
                 }
-                message = m.replaceAll(replaceResult.get());
+                result = breaker.getLastGood(target, recipient);
+            }
+            if (sampled) {
+                costs.record(replacer, System.nanoTime() - start);
             }
         }
-        return message;
+
+        if (result != null) {
+            replaceResults.put(replacer, result);
+        }
+        return result;
     }
 
-    public static String replace(Player target, Player recipient, String message) {
-        final String result = replace(target, recipient, message, Maps.newHashMap());
-        if (Dependency.PlaceholderAPI.isPresent()) {
-            return PlaceholderAPI.setPlaceholders(target, result);
+    private static void logTrip(Replacer replacer, Throwable error) {
+        ViewItPlugin.getInstance().getLogger().log(Level.WARNING, "Placeholder "
+                + replacer.getPattern().pattern() + " has been tripped and will show its last "
+                + "good value until it recovers: " + replacer.getStatus(), error);
+    }
+
+    /**
+     * Gets every registered replacer
+     */
+    public static List<Replacer> getReplacers() {
+        return Collections.unmodifiableList(replacerList);
+    }
+
+    /**
+     * Forgets the values kept for a player that has left. Called by ViewIt when the player's slot
+     * is freed.
+     */
+    public static void release(Player player) {
+        replacerList.forEach(replacer -> replacer.getBreaker().release(player));
+        placeholderBridge.release(player);
+    }
+
+    static long getDefaultTimeBudget() {
+        return defaultTimeBudget;
+    }
+
+    static int getDefaultMaxFailures() {
+        return defaultMaxFailures;
+    }
+
+    static long getInitialBackoffNanos() {
+        return initialBackoffNanos;
+    }
+
+    static long getMaxBackoffNanos() {
+        return maxBackoffNanos;
+    }
+
+    /**
+     * Adds a listener called with players whose async placeholder values changed so that lines
+     * using them can be rendered again
+     */
+    public static void addChangeListener(Consumer<Player> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addChangeListener(Consumer)}
+     */
+    public static void removeChangeListener(Consumer<Player> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Starts loading the next batch of every batch replacer
+     */
+    private static void refreshBatches() {
+        for (Replacer replacer : replacerList) {
+            if (replacer instanceof BatchReplacer) {
+                ((BatchReplacer) replacer).refresh();
+            }
+        }
+    }
+
+    static void valueChanged(Player target) {
+        changeListeners.forEach(listener -> listener.accept(target));
+    }
+
+    /**
+     * Gets the bounded executor async placeholder values are loaded on. Tasks are rejected when
+     * it is full.
+     */
+    public static Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    static long getAsyncRefreshMillis() {
+        return asyncRefreshMillis;
+    }
+
+    static String getAsyncLoadingText() {
+        return asyncLoadingText;
+    }
+
+    /**
+     * Runs a blocking load on the bounded executor. If it takes longer than the configured timeout
+     * the returned future completes exceptionally and the load is cancelled, interrupting its
+     * thread so that a hung load can't hold on to it.
+     *
+     * @param load blocking load
+     * @return future completed with the result of the load
+     * @throws RejectedExecutionException if every placeholder thread is busy and the queue is full
+     */
+    public static <T> CompletableFuture<T> loadAsync(Callable<T> load) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = asyncExecutor.submit(() -> {
+            try {
+                result.complete(load.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException())) {
+                task.cancel(true);
+            }
+        }, asyncTimeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, error) -> timeout.cancel(false));
+        return result;
+    }
+
+    /**
+     * Gets a future completed with the result of a load or exceptionally if it takes longer than
+     * the configured timeout, in which case the load is cancelled. Loads started with {@link
+     * #loadAsync(Callable)} are interrupted; others are only interrupted if they support it.
+     */
+    static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> load) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        load.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        if (!result.isDone()) {
+            ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+                if (result.completeExceptionally(new TimeoutException())) {
+                    load.cancel(true);
+                }
+            }, asyncTimeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, error) -> timeout.cancel(false));
         }
         return result;
     }
 
+    /**
+     * Gets the value of a placeholder no replacer handles for a player, either from the family its
+     * prefix was registered for or the value stored from PlaceholderAPI
+     */
+    static String getPlaceholderValue(Player player, String placeholder) {
+        for (Map.Entry<String, BiFunction<Player, String, String>> entry : prefixResolvers
+                .entrySet()) {
+            String prefix = entry.getKey();
+            if (placeholder.startsWith(prefix, 1)) {
+                return entry.getValue().apply(player,
+                        placeholder.substring(prefix.length() + 1, placeholder.length() - 1));
+            }
+        }
+        return placeholderBridge.getValue(player, placeholder);
+    }
+
+    /**
+     * Checks whether a message contains any placeholder that must be resolved separately for
+     * each recipient
+     *
+     * @param message message to check
+     * @return true if a recipient dependent replacer matches the message
+     */
+    public static boolean isRecipientDependent(String message) {
+        return compile(message).isRecipientDependent();
+    }
+
     public void reset() {
         replacerList.clear();
+        prefixResolvers.clear();
+        changeListeners.clear();
+        templates.invalidateAll();
+        stopLoaders();
     }
 
     public static class Defaults {
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.replacer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <P>A line of text that has been scanned once for the placeholders it contains. Each placeholder
+ * is a slot whose value can be resolved separately from rendering the line, which allows callers
+ * to skip rendering when none of the values have changed.</P>
+ *
+ * <P>Templates are obtained through {@link Replacers#compile(String)}.</P>
+ */
+public final class Template {
+
+    // Matches a PlaceholderAPI placeholder such as %player_health%
+    private static final Pattern PLACEHOLDER = Pattern.compile("%([^%\\s]+)%");
+    // Raw text of the template
+    private final String text;
+    // Replacers whose pattern occurs in the text
+    private final Replacer[] replacers;
+    // PlaceholderAPI placeholders occuring in the text that no replacer handles
+    private final String[] placeholders;
+    // Whether any replacer used depends on the recipient
+    private final boolean recipientDependent;
+    // Whether any replacer used loads its values asynchronously
+    private final boolean async;
+
+    Template(String text, List<Replacer> replacerList) {
+        this.text = text;
+        List<Replacer> used = Lists.newArrayList();
+        Set<String> found = Sets.newLinkedHashSet();
+        if (text.indexOf('%') >= 0) {
+            for (Replacer replacer : replacerList) {
+                if (replacer.getPattern().matcher(text).find()) {
+                    used.add(replacer);
+                }
+            }
+
+            Matcher m = PLACEHOLDER.matcher(text);
+            while (m.find()) {
+                found.add(m.group());
+            }
+            found.removeIf(p -> used.stream().anyMatch(r -> r.getPattern().matcher(p).matches()));
+        }
+        this.replacers = used.toArray(new Replacer[used.size()]);
+        this.placeholders = found.toArray(new String[found.size()]);
+        this.recipientDependent = used.stream().anyMatch(Replacer::isRecipientDependent);
+        this.async = used.stream().anyMatch(Replacer::isAsync);
+    }
+
+    /**
+     * Gets the raw text of this template
+     *
+     * @return text with placeholders
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gets whether this template contains no placeholders
+     *
+     * @return true if rendering always gives the raw text
+     */
+    public boolean isConstant() {
+        return replacers.length == 0 && placeholders.length == 0;
+    }
+
+    /**
+     * Gets whether any placeholder in this template must be resolved separately for each recipient
+     *
+     * @return true if a recipient dependent replacer is used
+     */
+    public boolean isRecipientDependent() {
+        return recipientDependent;
+    }
+
+    /**
+     * Gets whether any placeholder in this template is loaded asynchronously so may change
+     * between animation updates
+     *
+     * @return true if an {@link AsyncReplacer} or {@link BatchReplacer} is used
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Resolves the value of every placeholder slot in this template. Values are null where a
+     * placeholder could not be resolved.
+     *
+     * @param target         player the placeholders are about
+     * @param recipient      player viewing the result
+     * @param replaceResults results of replacers already resolved for this target and recipient;
+     *                       new results are added to it
+     * @return slot values
+     */
+    public String[] resolve(Player target, Player recipient, Map<Replacer, String> replaceResults) {
+        String[] values = new String[replacers.length + placeholders.length];
+        for (int i = 0; i < replacers.length; i++) {
+            values[i] = Replacers.getResult(replacers[i], target, recipient, replaceResults);
+        }
+        for (int i = 0; i < placeholders.length; i++) {
+            values[replacers.length + i] = Replacers.getPlaceholderValue(target, placeholders[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Renders this template using slot values obtained from {@link #resolve(Player, Player, Map)}
+     *
+     * @param values slot values
+     * @return text with placeholders replaced
+     */
+    public String render(String[] values) {
+        String message = text;
+        for (int i = 0; i < replacers.length; i++) {
+            if (values[i] != null) {
+                message = replacers[i].getPattern().matcher(message)
+                        .replaceAll(Matcher.quoteReplacement(values[i]));
+            }
+        }
+        for (int i = 0; i < placeholders.length; i++) {
+            String value = values[replacers.length + i];
+            if (value != null) {
+                message = message.replace(placeholders[i], value);
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.scoreboard;
+
+import com.google.common.collect.Sets;
+
+import org.bukkit.GameMode;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * <P>A condition a player must meet for a {@link ScoreboardElement} to be shown to them.</P>
+ *
+ * <P>Results are cached for each player and only tested again when the player changes world or
+ * gamemode, when the element's condition is replaced, or when {@link
+ * ScoreboardService#refreshConditions(Player)} is called, eg. after changing a player's
+ * permissions. Conditions are always tested on the main server thread; one that throws hides the
+ * element.</P>
+ */
+@FunctionalInterface
+public interface Condition {
+
+    /**
+     * Condition met by every player
+     */
+    Condition ALWAYS = player -> true;
+
+    /**
+     * Tests whether the element should be shown to the player
+     */
+    boolean test(Player player);
+
+    /**
+     * Gets a condition met when both this and the other condition are met
+     */
+    default Condition and(Condition other) {
+        return player -> test(player) && other.test(player);
+    }
+
+    /**
+     * Gets a condition met when this condition isn't
+     */
+    default Condition negate() {
+        return player -> !test(player);
+    }
+
+    /**
+     * Gets a condition met by players with a permission
+     */
+    static Condition permission(String permission) {
+        return player -> player.hasPermission(permission);
+    }
+
+    /**
+     * Gets a condition met by players in any of the worlds named
+     */
+    static Condition world(String... worlds) {
+        Set<String> names = Sets.newHashSet(Arrays.asList(worlds));
+        return player -> names.contains(player.getWorld().getName());
+    }
+
+    /**
+     * Gets a condition met by players in any of the gamemodes
+     */
+    static Condition gameMode(GameMode first, GameMode... rest) {
+        Set<GameMode> modes = EnumSet.of(first, rest);
+        return player -> modes.contains(player.getGameMode());
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.scoreboard;
+
+import org.bukkit.entity.Player;
+
+/**
+ * <P>Collects changes to the elements of many players and applies them together. Players never
+ * see the intermediate states between changes in the same batch: every change is applied in a
+ * single update, with one sort and one redraw of the lines that differ for each affected
+ * player.</P>
+ *
+ * <P>A batch is meant to be built and committed by a single thread; it isn't safe to share one
+ * between threads. Changes are applied in the order they were made, so adding and then removing
+ * the same element for a player leaves it removed.</P>
+ *
+ * @see ScoreboardService#batch()
+ */
+public interface ScoreboardBatch {
+
+    /**
+     * Adds elements to show to a player
+     */
+    ScoreboardBatch addElements(Player player, ScoreboardElement... elements);
+
+    /**
+     * Removes elements from the list shown to a player
+     */
+    ScoreboardBatch removeElements(Player player, ScoreboardElement... elements);
+
+    /**
+     * Sets the priority of an element for everyone it is shown to
+     */
+    ScoreboardBatch setPriority(ScoreboardElement element, int priority);
+
+    /**
+     * Applies every change in this batch on the next update
+     *
+     * @throws IllegalStateException if the batch has already been committed
+     */
+    void commit();
+
+    /**
+     * Applies every change in this batch on the next update and then runs a callback on the main
+     * thread, once no player's layout holds elements the batch removed. Elements removed from
+     * every player can be cancelled from the callback.
+     *
+     * @param applied callback run once the changes have been applied
+     * @throws IllegalStateException if the batch has already been committed
+     */
+    void commit(Runnable applied);
+}
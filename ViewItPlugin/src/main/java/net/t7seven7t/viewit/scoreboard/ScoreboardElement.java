@@ -145,6 +145,15 @@ public interface ScoreboardElement {
      */
     List<String> getContents(Player player);
 
+    /**
+     * Gets the text contents of this element about the target player as should be displayed to
+     * the recipient. Implementations should share the work of rendering between every recipient
+     * of the same target where possible.
+     */
+    default List<String> getContents(Player target, Player recipient) {
+        return getContents(target);
+    }
+
     /**
      * Gets the number of lines this element contains
      */
@@ -187,14 +196,61 @@ public interface ScoreboardElement {
     /**
      * Gets the last time this in millis since UNIX time (Jan 1st 1970) that this element updated
      * its contents
+     *
+     * @deprecated the scoreboard service orders updates with {@link #getLastUpdate()}; the default
+     * implementation only approximates this from the tick it last updated on
      */
+    @Deprecated
     long lastUpdateMillis();
 
+    /**
+     * Gets a value that increases every time this element updates its contents. Scoreboards are
+     * redrawn when it is greater than the value seen when they were last drawn. Defaults to {@link
+     * #lastUpdateMillis()}.
+     */
+    default long getLastUpdate() {
+        return lastUpdateMillis();
+    }
+
     /**
      * Gets the plugin that created this element
      */
     Plugin getPlugin();
 
+    /**
+     * Gets a name identifying this element among those of its plugin, eg. in the stats output.
+     * Elements from the config are named after their key.
+     *
+     * @return name or null if the element wasn't given one
+     */
+    default String getName() {
+        return null;
+    }
+
+    /**
+     * Stops updating this element and frees what it keeps for each player. The element must not be
+     * shown to anyone afterwards. Elements without any background work have nothing to stop.
+     */
+    default void cancel() {
+    }
+
+    /**
+     * Gets the condition a player must meet for this element to be shown to them. By default the
+     * condition is kept by the scoreboard service.
+     */
+    default Condition getCondition() {
+        return ScoreboardService.getInstance().getCondition(this);
+    }
+
+    /**
+     * Sets the condition a player must meet for this element to be shown to them. Players that
+     * don't meet it keep the element in their list but it takes up no lines. By default the
+     * condition is kept by the scoreboard service.
+     */
+    default void setCondition(Condition condition) {
+        ScoreboardService.getInstance().setCondition(this, condition);
+    }
+
     /**
      * A priority to display a ScoreboardElement at.
      */
@@ -19,6 +19,7 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.scoreboard.ScoreboardManager;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -56,12 +57,20 @@ public interface ScoreboardService {
      * Returns a list of Players can viewit the specified element
      */
     static List<Player> getPlayers(ScoreboardElement element) {
-        return Bukkit.getOnlinePlayers().stream().filter(
+        return getInstance().getTrackedPlayers().stream().filter(
                 player -> Optional.ofNullable(getInstance().getElements(player))
                         .orElse(Collections.emptyList()).contains(element)).collect(
                 Collectors.toList());
     }
 
+    /**
+     * Gets every player whose scoreboard is handled by the service
+     */
+    default List<Player> getTrackedPlayers() {
+        return Bukkit.getOnlinePlayers().stream().filter(this::hasPlayer)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Gets whether the player has a title
      */
@@ -117,7 +126,9 @@ public interface ScoreboardService {
     void recalculateElementOrder(Player player);
 
     /**
-     * Gets the list of ScoreboardElements that are tracked for this player
+     * Gets an immutable snapshot of the ScoreboardElements that are tracked for this player. Changes
+     * made through this service may be called from any thread and show up in the snapshot once the
+     * next update has applied them.
      */
     List<ScoreboardElement> getElements(Player player);
 
@@ -136,4 +147,66 @@ public interface ScoreboardService {
      * added yet.
      */
     void setVisibility(Player player, boolean visible);
+
+    /**
+     * Removes and adds elements in a single operation, such as when switching the player to a
+     * different layout. Elements both removed and added are kept. Implementations should only
+     * redraw the lines that differ.
+     */
+    default void swapElements(Player player, Collection<? extends ScoreboardElement> remove,
+                              Collection<? extends ScoreboardElement> add) {
+        addElements(player, add.toArray(new ScoreboardElement[add.size()]));
+        removeElements(player, remove.stream().filter(element -> !add.contains(element))
+                .toArray(ScoreboardElement[]::new));
+    }
+
+    /**
+     * Starts a batch of changes to the elements of any number of players that are applied
+     * together once committed
+     */
+    ScoreboardBatch batch();
+
+    /**
+     * Tests the conditions of the player's elements again. Results are otherwise cached until the
+     * player changes world or gamemode, so call this after changing anything else a condition
+     * depends on such as permissions.
+     */
+    void refreshConditions(Player player);
+
+    /**
+     * Gets the condition kept for an element that doesn't keep its own
+     *
+     * @see ScoreboardElement#getCondition()
+     */
+    Condition getCondition(ScoreboardElement element);
+
+    /**
+     * Keeps the condition of an element that doesn't keep its own and tests it again for every
+     * player shown the element
+     *
+     * @see ScoreboardElement#setCondition(Condition)
+     */
+    void setCondition(ScoreboardElement element, Condition condition);
+
+    /**
+     * Sets the player whose information the viewer's elements are displayed about, such as when
+     * spectating. Elements are rendered once for each target and shared by all of its viewers.
+     * Setting the target to null or the viewer resets the viewer to viewing themselves.
+     */
+    void setTarget(Player viewer, Player target);
+
+    /**
+     * Gets the player whose information is displayed to the viewer. This is the viewer if they
+     * aren't viewing another player.
+     */
+    Player getTarget(Player viewer);
+
+    /**
+     * Gets the list of players viewing information about the target, not including the target
+     */
+    default List<Player> getViewers(Player target) {
+        return getTrackedPlayers().stream()
+                .filter(player -> player != target && getTarget(player) == target)
+                .collect(Collectors.toList());
+    }
 }
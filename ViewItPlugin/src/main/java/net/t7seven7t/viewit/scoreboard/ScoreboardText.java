@@ -0,0 +1,63 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.scoreboard;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Formats text for display as a scoreboard line
+ */
+public final class ScoreboardText {
+
+    private ScoreboardText() {
+    }
+
+    /**
+     * Translates formatting codes to section symbols ready for the client to receive
+     */
+    public static String format(String string) {
+        return ChatColor.translateAlternateColorCodes('&', string);
+    }
+
+    /**
+     * Splits formatted text into the 16 character prefix and suffix of a scoreboard team. The
+     * colors at the end of the prefix are carried over to the suffix.
+     *
+     * @param string formatted text
+     * @return array of the prefix followed by the suffix
+     */
+    public static String[] split(String string) {
+        if (string.length() <= 16) {
+            return new String[]{string, ""};
+        }
+
+        String part1 = string.substring(0, 16);
+        String part2 = string.substring(16, Math.min(string.length(), 32));
+        char last = part1.charAt(15);
+        char first = part2.charAt(0);
+        // check if split on a color code
+        if (last == 167 && ChatColor.getByChar(first) != null) {
+            part1 = part1.substring(0, 15);
+            part2 = last + part2;
+        }
+
+        // Apply part 1 end color to beginning of part 2
+        String lastColors = ChatColor.getLastColors(part1);
+        if (lastColors.isEmpty()) lastColors = ChatColor.WHITE.toString();
+        part2 = lastColors + part2;
+        part2 = part2.substring(0, Math.min(part2.length(), 16));
+
+        return new String[]{part1, part2};
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.stats;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import net.t7seven7t.viewit.replacer.Replacer;
+import net.t7seven7t.viewit.replacer.Replacers;
+import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
+import net.t7seven7t.viewit.scoreboard.ScoreboardText;
+import net.t7seven7t.viewit.supply.CompiledFrameSupply;
+import net.t7seven7t.viewit.supply.FrameSupply;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * <P>Attributes the time spent rendering scoreboards to the elements, replacers and plugins
+ * responsible so that expensive ones can be found on a live server.</P>
+ *
+ * <P>Measuring is either off, done for every call or sampled: only one in every sample-rate calls
+ * is timed and totals are scaled up to estimate the full cost. Callers ask {@link #start()} whether
+ * to measure so calls that aren't sampled cost a single random number.</P>
+ */
+public final class CostTracker {
+
+    // Number of update passes whose durations are kept
+    private static final int UPDATE_HISTORY = 8192;
+
+    /**
+     * Stages of displaying an element that are measured separately
+     */
+    public enum Phase {
+        /**
+         * Getting the current frame of each line
+         */
+        FRAME,
+        /**
+         * Replacing placeholders and rendering the text of each line
+         */
+        REPLACE,
+        /**
+         * Splitting lines into prefixes and suffixes and setting them on the scoreboard
+         */
+        FORMAT
+    }
+
+    // Times only one in this many calls; 0 when off
+    private final int sampleRate;
+    // Costs of each element by phase
+    private final Map<ScoreboardElement, Cost[]> elementCosts;
+    // Costs of each replacer
+    private final Map<Replacer, Cost> replacerCosts;
+    // Durations in nanos of the most recent update passes, only written by the update task
+    private final long[] updates = new long[UPDATE_HISTORY];
+    // Number of update passes recorded since the last reset
+    private volatile long updateCount;
+    // Time in nanos the current totals started from
+    private volatile long since = System.nanoTime();
+
+    public CostTracker(Plugin plugin) {
+        String mode = plugin.getConfig().getString("stats.mode", "sampled");
+        this.sampleRate = mode.equalsIgnoreCase("off") ? 0 : mode.equalsIgnoreCase("full") ? 1
+                : Math.max(1, plugin.getConfig().getInt("stats.sample-rate", 16));
+        this.elementCosts = new MapMaker().weakKeys().makeMap();
+        this.replacerCosts = new MapMaker().weakKeys().makeMap();
+
+        long interval = plugin.getConfig().getLong("stats.log-interval", 0L);
+        if (interval > 0) {
+            Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+                report(5).forEach(plugin.getLogger()::info);
+                reset();
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * Gets whether costs are being measured
+     */
+    public boolean isEnabled() {
+        return sampleRate > 0;
+    }
+
+    /**
+     * Decides whether to measure a call
+     *
+     * @return the current time in nanos if the call should be measured, otherwise 0
+     */
+    public long start() {
+        if (sampleRate == 0
+                || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+            return 0L;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records one measured call of a phase of an element
+     */
+    public void record(ScoreboardElement element, Phase phase, long nanos) {
+        elementCosts.computeIfAbsent(element, e -> {
+            Cost[] costs = new Cost[Phase.values().length];
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] = new Cost();
+            }
+            return costs;
+        })[phase.ordinal()].add(nanos);
+    }
+
+    /**
+     * Records one measured call of a replacer
+     */
+    public void record(Replacer replacer, long nanos) {
+        replacerCosts.computeIfAbsent(replacer, r -> new Cost()).add(nanos);
+    }
+
+    /**
+     * Records the duration of a whole update pass over every player. Every pass is recorded while
+     * measuring is enabled.
+     */
+    public void recordUpdate(long nanos) {
+        long count = updateCount;
+        updates[(int) (count % UPDATE_HISTORY)] = nanos;
+        updateCount = count + 1;
+    }
+
+    /**
+     * Gets the number of update passes recorded since the last reset
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Gets the durations in nanos of the most recent update passes in no particular order
+     */
+    public long[] getUpdateDurations() {
+        return Arrays.copyOf(updates, (int) Math.min(updateCount, UPDATE_HISTORY));
+    }
+
+    /**
+     * Gets a percentile of durations
+     *
+     * @param durations durations to take the percentile of, sorted in place
+     * @param percentile between 0 and 100
+     * @return the duration at the percentile or 0 if there are none
+     */
+    public static long percentile(long[] durations, double percentile) {
+        if (durations.length == 0) {
+            return 0L;
+        }
+        Arrays.sort(durations);
+        int index = (int) Math.ceil(percentile / 100 * durations.length) - 1;
+        return durations[Math.max(0, Math.min(durations.length - 1, index))];
+    }
+
+    /**
+     * Forgets all costs recorded so far
+     */
+    public void reset() {
+        elementCosts.clear();
+        replacerCosts.clear();
+        updateCount = 0;
+        since = System.nanoTime();
+    }
+
+    /**
+     * Summarises the estimated costs recorded since the last reset
+     *
+     * @param limit most elements and replacers to list
+     * @return lines of the summary
+     */
+    public List<String> report(int limit) {
+        List<String> lines = Lists.newArrayList();
+        double seconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - since));
+        lines.add("Scoreboard costs over the last " + (long) seconds + "s"
+                + (sampleRate > 1 ? " (estimated from 1 in " + sampleRate + " calls)" : "") + ":");
+
+        long[] durations = getUpdateDurations();
+        if (durations.length > 0) {
+            lines.add(String.format("Updates: %d passes, p50 %.2fms, p99 %.2fms, max %.2fms",
+                    updateCount, percentile(durations, 50) / 1e6,
+                    percentile(durations, 99) / 1e6, durations[durations.length - 1] / 1e6));
+        }
+
+        Map<String, long[]> plugins = Maps.newHashMap();
+        elementCosts.forEach((element, costs) -> {
+            long[] totals = plugins.computeIfAbsent(element.getPlugin().getName(),
+                    name -> new long[costs.length]);
+            for (int i = 0; i < costs.length; i++) {
+                totals[i] += costs[i].nanos.sum();
+            }
+        });
+        lines.add("Plugins:");
+        plugins.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> -sum(entry.getValue())))
+                .forEach(entry -> lines.add("  " + entry.getKey() + ": "
+                        + describe(sum(entry.getValue()), seconds) + " - frame "
+                        + millis(entry.getValue()[Phase.FRAME.ordinal()]) + ", replace "
+                        + millis(entry.getValue()[Phase.REPLACE.ordinal()]) + ", format "
+                        + millis(entry.getValue()[Phase.FORMAT.ordinal()])));
+
+        lines.add("Elements:");
+        elementCosts.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> -total(entry.getValue())))
+                .limit(limit)
+                .forEach(entry -> {
+                    ScoreboardElement element = entry.getKey();
+                    lines.add("  " + element.getPlugin().getName() + " " + identify(element)
+                            + " priority " + element.getPriority() + ", " + element.getSize()
+                            + " lines: " + describe(total(entry.getValue()), seconds) + " over "
+                            + entry.getValue()[Phase.FRAME.ordinal()].count.sum() * sampleRate
+                            + " renders");
+                });
+
+        lines.add("Replacers:");
+        replacerCosts.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> -entry.getValue().nanos.sum()))
+                .limit(limit)
+                .forEach(entry -> {
+                    long calls = entry.getValue().count.sum();
+                    long nanos = entry.getValue().nanos.sum();
+                    lines.add("  " + entry.getKey().getPattern().pattern() + ": "
+                            + describe(nanos, seconds) + " over " + calls * sampleRate
+                            + " calls (" + TimeUnit.NANOSECONDS.toMicros(nanos / calls)
+                            + "us each)" + (entry.getKey().isTripped() ? " [tripped]" : ""));
+                });
+
+        List<Replacer> tripped = Replacers.getReplacers().stream().filter(Replacer::isTripped)
+                .collect(Collectors.toList());
+        if (!tripped.isEmpty()) {
+            lines.add("Tripped replacers:");
+            tripped.forEach(replacer -> lines.add("  " + replacer.getPattern().pattern() + ": "
+                    + replacer.getStatus()));
+        }
+        return lines;
+    }
+
+    /**
+     * Identifies an element by its name or, without one, by the text of its first line along with
+     * an id telling apart elements that start the same way
+     */
+    private static String identify(ScoreboardElement element) {
+        if (element.getName() != null) {
+            return element.getName();
+        }
+
+        List<FrameSupply> frames = element.getFrames();
+        FrameSupply first = frames.isEmpty() ? null : frames.get(0);
+        // only compiled frames can be read without a player
+        String text = first instanceof CompiledFrameSupply ? ChatColor.stripColor(
+                ScoreboardText.format(((CompiledFrameSupply) first).getFrame(null, 0)))
+                : first == null ? "" : first.getClass().getSimpleName();
+        if (text.length() > 24) {
+            text = text.substring(0, 24) + "...";
+        }
+        return "\"" + text + "\"#" + Integer.toHexString(System.identityHashCode(element));
+    }
+
+    private String describe(long nanos, double seconds) {
+        return millis(nanos) + " (" + String.format("%.2f", nanos * sampleRate / 1e6 / seconds)
+                + "ms/s)";
+    }
+
+    private String millis(long nanos) {
+        return String.format("%.1fms", nanos * sampleRate / 1e6);
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static long total(Cost[] costs) {
+        long total = 0;
+        for (Cost cost : costs) {
+            total += cost.nanos.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Measured time and number of measured calls
+     */
+    private static class Cost {
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder count = new LongAdder();
+
+        private void add(long nanos) {
+            this.nanos.add(nanos);
+            count.increment();
+        }
+    }
+}
@@ -50,7 +50,9 @@ public class AnimatedFrameSupply implements FrameSupply {
     /**
      * <P>Gets the animated frame at the ith position in this animation.</P> <P>Override this method
      * to provide your alternative way of obtaining certain frames. If this method is overriden then
-     * so must {@link AnimatedFrameSupply#getFrameCount()}</P>
+     * so must {@link AnimatedFrameSupply#getFrameCount()}</P> <P>Scoreboard elements keep track
+     * of the frame index for each player themselves and display frames using this method, so a
+     * single instance is shared by every player.</P>
      *
      * @param player Receiving player
      * @param index  frame position in the animation
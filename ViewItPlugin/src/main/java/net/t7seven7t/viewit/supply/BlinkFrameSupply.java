@@ -0,0 +1,47 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.supply;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Shows text for a number of frames and then hides it for a number of frames
+ */
+public class BlinkFrameSupply extends ProceduralFrameSupply {
+
+    private final String text;
+    // Number of frames the text is shown for
+    private final int on;
+
+    /**
+     * @param text text to blink
+     * @param on   number of frames the text is shown for
+     * @param off  number of frames the text is hidden for
+     */
+    public BlinkFrameSupply(String text, int on, int off) {
+        super(checkFrames(on, off));
+        this.text = text;
+        this.on = on;
+    }
+
+    private static int checkFrames(int on, int off) {
+        Preconditions.checkArgument(on > 0 && off >= 0, "text must be shown for at least a frame");
+        return on + off;
+    }
+
+    @Override
+    protected String generateFrame(int index) {
+        return index < on ? text : "";
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.supply;
+
+import com.google.common.base.Preconditions;
+
+import net.t7seven7t.viewit.scoreboard.ScoreboardText;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Sweeps a sequence of colors across text. Each color covers a band of characters and the bands
+ * move one character every frame.
+ */
+public class ColorWaveFrameSupply extends ProceduralFrameSupply {
+
+    private final String text;
+    // Formatting code of each color in the wave
+    private final String[] colors;
+    // Number of characters covered by each color
+    private final int band;
+
+    /**
+     * @param text   text to color; formatting codes are removed
+     * @param colors colors of the wave in order
+     * @param band   number of characters covered by each color
+     */
+    public ColorWaveFrameSupply(String text, ChatColor[] colors, int band) {
+        super(checkFrames(colors, band));
+        this.text = ChatColor.stripColor(ScoreboardText.format(text));
+        this.colors = new String[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            this.colors[i] = colors[i].toString();
+        }
+        this.band = band;
+    }
+
+    private static int checkFrames(ChatColor[] colors, int band) {
+        Preconditions.checkArgument(colors.length > 0, "at least one color is needed");
+        Preconditions.checkArgument(band > 0, "band must be positive");
+        return colors.length * band;
+    }
+
+    @Override
+    protected String generateFrame(int index) {
+        StringBuilder builder = new StringBuilder(text.length() * 3);
+        String current = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String color = colors[((i + getFrameCount() - index) / band) % colors.length];
+            // only switch colors where needed to stay within the length of a line
+            if (c != ' ' && !color.equals(current)) {
+                builder.append(color);
+                current = color;
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.supply;
+
+import com.google.common.base.Preconditions;
+
+import net.t7seven7t.viewit.scoreboard.ScoreboardText;
+
+import org.bukkit.entity.Player;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <P>An animation of text frames that is compiled when frames are first displayed.</P>
+ *
+ * <P>Frames without placeholders are the same for every player, so they're formatted and split
+ * into a scoreboard prefix and suffix once and kept. Displaying one of them is then a lookup in
+ * that table. Frames containing placeholders are rendered for each player as usual.</P>
+ *
+ * <P>Frames may also be generated on demand by a {@link ProceduralFrameSupply}; each frame is only
+ * generated once and shared by every player and every copy.</P>
+ */
+public class CompiledFrameSupply extends AnimatedFrameSupply {
+
+    // Marks a frame containing placeholders in the table of parts
+    private static final String[] DYNAMIC = new String[0];
+
+    // Instance generating frames; differs from this for copies
+    private final CompiledFrameSupply source;
+    private final int frameCount;
+    // Unformatted text of every frame that has been generated
+    private final AtomicReferenceArray<String> frames;
+    // Prefix and suffix of every frame that has been compiled
+    private final AtomicReferenceArray<String[]> parts;
+
+    public CompiledFrameSupply(String... frames) {
+        this(frames.length);
+        for (int i = 0; i < frames.length; i++) {
+            this.frames.set(i, Preconditions.checkNotNull(frames[i], "frame %s is null", i));
+            getParts(i);
+        }
+    }
+
+    /**
+     * Creates a supply whose frames are generated when they're first needed; only used by {@link
+     * ProceduralFrameSupply}
+     *
+     * @param frameCount total number of frames
+     */
+    CompiledFrameSupply(int frameCount) {
+        super(Collections.emptyList());
+        this.source = this;
+        this.frameCount = frameCount;
+        this.frames = new AtomicReferenceArray<>(frameCount);
+        this.parts = new AtomicReferenceArray<>(frameCount);
+    }
+
+    private CompiledFrameSupply(CompiledFrameSupply source) {
+        super(Collections.emptyList());
+        this.source = source;
+        this.frameCount = source.frameCount;
+        this.frames = source.frames;
+        this.parts = source.parts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFrame(Player player, int index) {
+        if (frameCount == 0) {
+            return "";
+        }
+        if (index < 0 || index >= frameCount) {
+            index = 0;
+        }
+
+        String frame = frames.get(index);
+        if (frame == null) {
+            // only procedural supplies have frames that weren't given; generating a frame twice
+            // on a race is harmless since both results are equal
+            frame = ((ProceduralFrameSupply) source).generateFrame(index);
+            frames.set(index, frame);
+        }
+        return frame;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets whether a frame contains no placeholders and is displayed the same to everyone
+     *
+     * @param index frame position in the animation
+     */
+    public boolean isStatic(int index) {
+        return getParts(index) != null;
+    }
+
+    /**
+     * Gets the precompiled scoreboard prefix and suffix of a static frame. The returned array is
+     * shared and must not be modified.
+     *
+     * @param index frame position in the animation
+     * @return array of the prefix followed by the suffix or null if the frame isn't static
+     */
+    public String[] getParts(int index) {
+        if (frameCount == 0) {
+            return null;
+        }
+        if (index < 0 || index >= frameCount) {
+            index = 0;
+        }
+
+        String[] result = parts.get(index);
+        if (result == null) {
+            String frame = getFrame(null, index);
+            result = frame.indexOf('%') < 0 ? ScoreboardText.split(ScoreboardText.format(frame))
+                    : DYNAMIC;
+            parts.set(index, result);
+        }
+        return result == DYNAMIC ? null : result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AnimatedFrameSupply copy() {
+        // compiled frames are immutable so only the animation state needs to be separate
+        return new CompiledFrameSupply(source);
+    }
+}
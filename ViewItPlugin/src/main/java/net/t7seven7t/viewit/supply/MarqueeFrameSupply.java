@@ -0,0 +1,61 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.supply;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import net.t7seven7t.viewit.scoreboard.ScoreboardText;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Scrolls text through a window of fixed width, wrapping around once the end has passed
+ */
+public class MarqueeFrameSupply extends ProceduralFrameSupply {
+
+    // Shown between the end of the text and its start
+    private static final String GAP = "   ";
+
+    // Text followed by the gap shown before it wraps around
+    private final String loop;
+    private final int width;
+    private final String color;
+
+    /**
+     * @param text  text to scroll; formatting codes are removed
+     * @param width number of characters shown at once
+     * @param color formatting codes applied to every frame
+     */
+    public MarqueeFrameSupply(String text, int width, String color) {
+        super(toLoop(text).length());
+        Preconditions.checkArgument(width > 0, "width must be positive");
+        this.loop = toLoop(text);
+        this.width = width;
+        this.color = Strings.nullToEmpty(color);
+    }
+
+    private static String toLoop(String text) {
+        return ChatColor.stripColor(ScoreboardText.format(text)) + GAP;
+    }
+
+    @Override
+    protected String generateFrame(int index) {
+        StringBuilder builder = new StringBuilder(color.length() + width).append(color);
+        for (int i = 0; i < width; i++) {
+            builder.append(loop.charAt((index + i) % loop.length()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.supply;
+
+/**
+ * A compiled animation whose frames are generated from their index when first needed rather than
+ * given up front, such as text effects with many frames
+ */
+public abstract class ProceduralFrameSupply extends CompiledFrameSupply {
+
+    /**
+     * @param frameCount total number of frames
+     */
+    protected ProceduralFrameSupply(int frameCount) {
+        super(frameCount);
+    }
+
+    /**
+     * Generates the unformatted text of a frame. Only called once for each frame.
+     *
+     * @param index frame position in the animation
+     * @return frame text
+     */
+    protected abstract String generateFrame(int index);
+}
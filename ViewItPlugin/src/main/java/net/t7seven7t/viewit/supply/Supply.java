@@ -13,17 +13,30 @@
  */
 package net.t7seven7t.viewit.supply;
 
+import com.google.common.collect.MapMaker;
+
+import org.bukkit.ChatColor;
+
 import java.util.Arrays;
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  *
  */
 public class Supply {
 
+    // Effects created with the same arguments share one instance and the frames it generated
+    private static final Map<List<Object>, AnimatedFrameSupply> EFFECTS = new MapMaker()
+            .weakValues().makeMap();
+
+    /**
+     * Creates an animation of text frames. Frames without placeholders are compiled ahead of time;
+     * see {@link CompiledFrameSupply}
+     */
     public static AnimatedFrameSupply of(String... frames) {
-        return new AnimatedFrameSupply(Arrays.stream(frames).map(Supply::of).collect(
-                Collectors.toList()));
+        return new CompiledFrameSupply(frames);
     }
 
     public static AnimatedFrameSupply of(SingularFrameSupply... frames) {
@@ -34,4 +47,39 @@ public class Supply {
         return (p) -> text;
     }
 
+    /**
+     * Creates text that scrolls through a window; see {@link MarqueeFrameSupply}
+     */
+    public static AnimatedFrameSupply marquee(String text, int width, String color) {
+        return effect(() -> new MarqueeFrameSupply(text, width, color), "marquee", text, width,
+                color);
+    }
+
+    /**
+     * Creates text with colors sweeping across it; see {@link ColorWaveFrameSupply}
+     */
+    public static AnimatedFrameSupply colorWave(String text, int band, ChatColor... colors) {
+        return effect(() -> new ColorWaveFrameSupply(text, colors, band), "wave", text, band,
+                Arrays.asList(colors));
+    }
+
+    /**
+     * Creates text that is typed out; see {@link TypewriterFrameSupply}
+     */
+    public static AnimatedFrameSupply typewriter(String text, int hold) {
+        return effect(() -> new TypewriterFrameSupply(text, hold), "typewriter", text, hold);
+    }
+
+    /**
+     * Creates text that blinks on and off; see {@link BlinkFrameSupply}
+     */
+    public static AnimatedFrameSupply blink(String text, int on, int off) {
+        return effect(() -> new BlinkFrameSupply(text, on, off), "blink", text, on, off);
+    }
+
+    private static AnimatedFrameSupply effect(Supplier<AnimatedFrameSupply> factory,
+                                              Object... key) {
+        return EFFECTS.computeIfAbsent(Arrays.asList(key), k -> factory.get());
+    }
+
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.supply;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+import net.t7seven7t.viewit.scoreboard.ScoreboardText;
+
+import org.bukkit.ChatColor;
+
+import java.util.List;
+
+/**
+ * Types text out one character at a time and then holds the complete text
+ */
+public class TypewriterFrameSupply extends ProceduralFrameSupply {
+
+    private final String text;
+    // Length of the text up to and including each visible character
+    private final int[] ends;
+
+    /**
+     * @param text text to type; formatting codes are kept and don't take a frame
+     * @param hold number of frames to show the complete text for
+     */
+    public TypewriterFrameSupply(String text, int hold) {
+        this(ScoreboardText.format(text), visibleEnds(ScoreboardText.format(text)),
+                checkHold(hold));
+    }
+
+    private TypewriterFrameSupply(String text, int[] ends, int hold) {
+        super(ends.length + hold);
+        this.text = text;
+        this.ends = ends;
+    }
+
+    private static int checkHold(int hold) {
+        Preconditions.checkArgument(hold >= 0, "hold must not be negative");
+        return hold;
+    }
+
+    private static int[] visibleEnds(String text) {
+        List<Integer> ends = Lists.newArrayList();
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == ChatColor.COLOR_CHAR && i + 1 < text.length()
+                    && ChatColor.getByChar(text.charAt(i + 1)) != null) {
+                // formatting code; typed along with the next character
+                ++i;
+                continue;
+            }
+            ends.add(i + 1);
+        }
+        return Ints.toArray(ends);
+    }
+
+    @Override
+    protected String generateFrame(int index) {
+        return index < ends.length ? text.substring(0, ends[index]) : text;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import net.t7seven7t.viewit.stats.CostTracker;
+import net.t7seven7t.viewit.supply.CompiledFrameSupply;
+import net.t7seven7t.viewit.supply.FrameSupply;
+import net.t7seven7t.viewit.supply.Supply;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static net.t7seven7t.viewit.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the per-player state of an element by counting what it stores rather than measuring the
+ * heap, which depends on when the garbage collector last ran. See /vtest heap for the measured
+ * footprint on a live server.
+ */
+public class SimpleScoreboardElementTest {
+
+    private static final List<FrameSupply> LINES = Arrays.asList(
+            new CompiledFrameSupply("&6&lServer"),
+            new CompiledFrameSupply("&aOnline", "&bOnline"),
+            new CompiledFrameSupply(""),
+            Supply.marquee("Welcome to the server", 12, "&e"),
+            Supply.blink("&cEvent starting", 2, 1),
+            new CompiledFrameSupply("&7example.com"));
+
+    private static Plugin plugin;
+    private SimpleScoreboardElement element;
+    private PlayerSlots slots;
+
+    @BeforeClass
+    public static void setUpServer() {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(stub(Server.class, (method, args) -> {
+                switch (method) {
+                    case "getLogger":
+                        return Logger.getLogger("Test");
+                    case "getOnlinePlayers":
+                        return Collections.emptyList();
+                    case "getPluginManager":
+                        return stub(PluginManager.class, (m, a) -> null);
+                    case "getScheduler":
+                        return stub(BukkitScheduler.class, (m, a) -> null);
+                    default:
+                        return null;
+                }
+            }));
+        }
+
+        YamlConfiguration config = new YamlConfiguration();
+        // the clock never ticks here so every player stays on the first step
+        config.set("animation-timing", "tick-locked");
+        config.set("stats.mode", "off");
+        plugin = stub(Plugin.class, (method, args) -> method.equals("getConfig") ? config : null);
+    }
+
+    @Before
+    public void setUp() {
+        slots = new PlayerSlots(plugin);
+        element = new SimpleScoreboardElement(plugin, 0, 20L, LINES, slots, new TickClock(plugin),
+                new CostTracker(plugin));
+    }
+
+    @Test
+    public void testLinesSharedBetweenPlayers() {
+        List<Player> players = createPlayers(50);
+        SimpleScoreboardElement.Rendered first = element.getRendered(players.get(0),
+                players.get(0));
+        Set<String> lines = Sets.newIdentityHashSet();
+        for (Player player : players) {
+            SimpleScoreboardElement.Rendered rendered = element.getRendered(player, player);
+            assertEquals(LINES.size(), rendered.lines.length);
+            for (int i = 0; i < LINES.size(); i++) {
+                assertSame(first.lines[i], rendered.lines[i]);
+                assertSame(first.parts[i], rendered.parts[i]);
+            }
+            lines.addAll(Arrays.asList(rendered.lines));
+        }
+
+        // one copy of each line no matter how many players see it
+        assertEquals(LINES.size(), lines.size());
+        assertEquals(players.size(), element.getStoredContents());
+        // static frames are displayed straight from their supply
+        assertEquals(0, element.getStoredTemplates());
+    }
+
+    @Test
+    public void testContentsBoundedByOnlinePlayers() {
+        for (int round = 0; round < 10; round++) {
+            List<Player> players = createPlayers(20);
+            players.forEach(player -> element.getRendered(player, player));
+            players.forEach(slots::release);
+        }
+
+        // contents left by players that quit are replaced by those taking their slots
+        assertEquals(20, element.getStoredContents());
+    }
+
+    private List<Player> createPlayers(int count) {
+        List<Player> players = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            players.add(Stubs.player("Player" + i));
+        }
+        return players;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit;
+
+import com.google.common.base.Defaults;
+
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Proxy;
+import java.util.function.BiFunction;
+
+/**
+ * Stand-ins for the parts of the Bukkit API tests need
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates an online player that is only equal to itself
+     */
+    public static Player player(String name) {
+        return stub(Player.class, (method, args) -> {
+            switch (method) {
+                case "isOnline":
+                    return true;
+                case "getName":
+                    return name;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Creates an implementation of an interface that answers calls by method name, returning the
+     * default value of the method's type where no answer is given. Stubs are only equal to
+     * themselves.
+     */
+    public static <T> T stub(Class<T> type, BiFunction<String, Object[], Object> answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return type.getSimpleName();
+                    }
+                    Object answer = answers.apply(method.getName(), args);
+                    return answer != null ? answer : Defaults.defaultValue(method.getReturnType());
+                }));
+    }
+}
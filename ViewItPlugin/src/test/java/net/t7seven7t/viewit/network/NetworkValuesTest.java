@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.network;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Connects two servers' values with grouped loopback transports
+ */
+public class NetworkValuesTest {
+
+    private NetworkValues local;
+    private NetworkValues remote;
+    // Another member of the group recording every batch published
+    private LoopbackTransport observer;
+    private final List<Map<String, String>> batches = Lists.newArrayList();
+    // Whether the local transport can currently publish
+    private boolean connected = true;
+
+    @Before
+    public void setUp() {
+        LoopbackTransport transport = new LoopbackTransport() {
+            @Override
+            public boolean publish(Map<String, String> values) {
+                return connected && super.publish(values);
+            }
+        };
+        local = new NetworkValues();
+        local.setTransport(transport);
+        remote = new NetworkValues();
+        remote.setTransport(new LoopbackTransport(transport));
+        observer = new LoopbackTransport(transport);
+        observer.setReceiver(batches::add);
+    }
+
+    @Test
+    public void testSetCoalescedUntilFlush() {
+        local.set("online", "1");
+        local.set("online", "2");
+        local.set("online", "3");
+        // applied locally straight away but not sent yet
+        assertEquals("3", local.get("online"));
+        assertNull(remote.get("online"));
+
+        local.flush();
+        assertEquals(Collections.singletonList(ImmutableMap.of("online", "3")), batches);
+        assertEquals("3", remote.get("online"));
+
+        // nothing changed since the last batch
+        local.flush();
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testFailedPublishKept() {
+        connected = false;
+        local.set("online", "1");
+        local.flush();
+        assertTrue(batches.isEmpty());
+        assertNull(remote.get("online"));
+
+        connected = true;
+        local.set("motd", "Hello");
+        local.flush();
+        assertEquals(Collections.singletonList(ImmutableMap.of("online", "1", "motd", "Hello")),
+                batches);
+        assertEquals("1", remote.get("online"));
+    }
+
+    @Test
+    public void testReceivedKeysValidated() {
+        observer.publish(ImmutableMap.of("bad key%", "1", "good_key", "2"));
+        assertNull(remote.get("bad key%"));
+        assertEquals("2", remote.get("good_key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKeyRejected() {
+        local.set("bad key%", "1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLongValueRejected() {
+        local.set("motd", Strings.repeat("x", NetworkTransport.MAX_ENTRY_LENGTH));
+    }
+}
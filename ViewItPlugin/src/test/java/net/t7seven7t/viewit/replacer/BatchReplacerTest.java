@@ -0,0 +1,151 @@
+/**
+ * Copyright 2015 t7seven7t
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.t7seven7t.viewit.replacer;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import net.t7seven7t.viewit.Stubs;
+
+import org.bukkit.entity.Player;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives batches of a replacer backed by a table in memory standing in for a database
+ */
+public class BatchReplacerTest {
+
+    private static final String LOADING = "...";
+    // Number of elements whose lines use the placeholder
+    private static final int ELEMENTS = 3;
+
+    private final Player alice = Stubs.player("alice");
+    private final Player bob = Stubs.player("bob");
+    // not in the table
+    private final Player carol = Stubs.player("carol");
+    private final List<Player> players = Lists.newArrayList(alice, bob, carol);
+
+    // Value of each player by name, as a database table would hold them
+    private final Map<String, String> table = Maps.newConcurrentMap();
+    // Players passed to each call of getResults
+    private final List<Set<Player>> calls = Lists.newCopyOnWriteArrayList();
+    // Players whose value changed
+    private final List<Player> changed = Lists.newCopyOnWriteArrayList();
+    private volatile CountDownLatch changes;
+    private final Consumer<Player> listener = player -> {
+        changed.add(player);
+        changes.countDown();
+    };
+    private BatchReplacer replacer;
+
+    @Before
+    public void setUp() {
+        Replacers.startLoaders(2, 10, 1000L);
+        Replacers.addChangeListener(listener);
+        replacer = new BatchReplacer("kills", LOADING) {
+            @Override
+            public Map<Player, String> getResults(Set<Player> targets) {
+                calls.add(ImmutableSet.copyOf(targets));
+                // SELECT name, kills FROM stats WHERE name IN (...)
+                Map<Player, String> results = Maps.newHashMap();
+                for (Player target : targets) {
+                    String value = table.get(target.getName());
+                    if (value != null) {
+                        results.put(target, value);
+                    }
+                }
+                return results;
+            }
+        };
+        table.put("alice", "10");
+        table.put("bob", "20");
+    }
+
+    @After
+    public void tearDown() {
+        Replacers.removeChangeListener(listener);
+        Replacers.stopLoaders();
+    }
+
+    @Test
+    public void testOneCallPerBatch() throws InterruptedException {
+        render();
+        for (Player player : players) {
+            assertEquals(LOADING, replacer.getResult(player, player));
+        }
+
+        refresh(2);
+        assertEquals(1, calls.size());
+        assertEquals(Sets.newHashSet(players), calls.get(0));
+        assertEquals(Sets.newHashSet(alice, bob), Sets.newHashSet(changed));
+        assertEquals("10", replacer.getResult(alice, alice));
+        assertEquals("20", replacer.getResult(bob, bob));
+        // missing from the results so still loading
+        assertEquals(LOADING, replacer.getResult(carol, carol));
+    }
+
+    @Test
+    public void testOnlyChangedValuesNotified() throws InterruptedException {
+        render();
+        refresh(2);
+
+        table.put("alice", "11");
+        render();
+        refresh(1);
+        assertEquals(2, calls.size());
+        assertEquals(Sets.newHashSet(players), calls.get(1));
+        assertEquals(Lists.newArrayList(alice), changed);
+        assertEquals("11", replacer.getResult(alice, alice));
+        assertEquals("20", replacer.getResult(bob, bob));
+    }
+
+    @Test
+    public void testNothingDue() {
+        replacer.refresh();
+        assertTrue(calls.isEmpty());
+    }
+
+    /**
+     * Renders a line using the placeholder in every element for every player
+     */
+    private void render() {
+        for (int i = 0; i < ELEMENTS; i++) {
+            players.forEach(player -> replacer.getResult(player, player));
+        }
+    }
+
+    /**
+     * Runs a batch and waits for the expected number of values to change
+     */
+    private void refresh(int expectedChanges) throws InterruptedException {
+        changed.clear();
+        changes = new CountDownLatch(expectedChanges);
+        replacer.refresh();
+        assertTrue(changes.await(5, TimeUnit.SECONDS));
+    }
+}
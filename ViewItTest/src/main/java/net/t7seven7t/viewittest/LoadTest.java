@@ -0,0 +1,279 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 t7seven7t
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package net.t7seven7t.viewittest;
+
+import com.google.common.collect.Lists;
+
+import net.t7seven7t.viewit.ViewItPlugin;
+import net.t7seven7t.viewit.scoreboard.ScoreboardBatch;
+import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
+import static net.t7seven7t.viewit.scoreboard.ScoreboardElement.Priority.*;
+import net.t7seven7t.viewit.scoreboard.ScoreboardService;
+import net.t7seven7t.viewit.stats.CostTracker;
+import net.t7seven7t.viewit.supply.FrameSupply;
+import net.t7seven7t.viewit.supply.Supply;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Puts ViewIt under a synthetic load for a fixed time and reports how it coped, so that builds can
+ * be compared before deploying. Elements are generated in a mix of four kinds, shown to every
+ * online player and a number of simulated ones, and changed at random every tick.
+ */
+class LoadTest {
+
+    /**
+     * Kinds of generated elements, in the order their weights are given
+     */
+    enum Kind {
+        /**
+         * Lines that never change
+         */
+        STATIC,
+        /**
+         * Lines cycling through colored frames and procedural effects
+         */
+        ANIMATED,
+        /**
+         * Lines made up mostly of placeholders
+         */
+        PLACEHOLDER,
+        /**
+         * Lines computed by a lambda for each player
+         */
+        LAMBDA
+    }
+
+    // Lines in each generated element
+    private static final int LINES = 3;
+
+    private final ViewItTest plugin;
+    private final CommandSender sender;
+    private final int seconds;
+    private final int mutationsPerTick;
+    private final Random random = new Random();
+    private final List<ScoreboardElement> elements = Lists.newArrayList();
+    private final int[] kindCounts = new int[Kind.values().length];
+    private final List<Player> simulated;
+    private final List<Player> players = Lists.newArrayList();
+    // Time in nanos between consecutive runs of the main thread task
+    private final long[] tickIntervals;
+    private final long[] mutations = new long[3];
+    private BukkitTask task;
+    private int ticks;
+    private long lastTick;
+    private long startNanos;
+    private long startAllocated;
+
+    /**
+     * @param elementCount number of elements to generate
+     * @param playerCount  number of simulated players to show them to alongside online players
+     * @param seconds      how long to run for
+     * @param weights      relative number of elements of each {@link Kind}
+     * @param mutations    number of random changes to make every tick
+     */
+    LoadTest(ViewItTest plugin, CommandSender sender, int elementCount, int playerCount,
+             int seconds, int[] weights, int mutations) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.seconds = seconds;
+        this.mutationsPerTick = mutations;
+        this.tickIntervals = new long[seconds * 20];
+        this.simulated = SimulatedPlayers.create(playerCount);
+
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        for (int i = 0, kind = 0, next = weights[0]; i < elementCount; i++) {
+            // spread the kinds in proportion to their weights
+            while (i * total >= next * elementCount && kind < weights.length - 1) {
+                next += weights[++kind];
+            }
+            kindCounts[kind]++;
+            elements.add(create(Kind.values()[kind], i));
+        }
+    }
+
+    private ScoreboardElement create(Kind kind, int index) {
+        List<FrameSupply> lines = Lists.newArrayListWithCapacity(LINES);
+        for (int line = 0; line < LINES; line++) {
+            String name = "&7" + kind.name().charAt(0) + index + "." + line;
+            switch (kind) {
+                case STATIC:
+                    lines.add(Supply.of(name + " static text"));
+                    break;
+                case ANIMATED:
+                    lines.add(line == 0
+                            ? Supply.marquee(name + " scrolls along this line", 14, "&e")
+                            : Supply.of(plugin.rand(name), plugin.rand(name), plugin.rand(name)));
+                    break;
+                case PLACEHOLDER:
+                    lines.add(Supply.of(name + " %name% %ping% %network_lobby_online%"));
+                    break;
+                case LAMBDA:
+                    lines.add(p -> name + " &a" + p.getName().length() * (index + 1) + " &e$"
+                            + plugin.money);
+                    break;
+            }
+        }
+        return ScoreboardElement.of(plugin, LOW(index % 100), kind == Kind.ANIMATED ? 5L : 20L,
+                lines);
+    }
+
+    /**
+     * Shows the elements to every player and starts changing them every tick
+     */
+    void start() {
+        ScoreboardService service = ScoreboardService.getInstance();
+        players.addAll(Bukkit.getOnlinePlayers());
+        players.addAll(simulated);
+
+        ScoreboardElement[] shown = elements.toArray(new ScoreboardElement[elements.size()]);
+        ScoreboardBatch batch = service.batch();
+        players.forEach(p -> batch.addElements(p, shown));
+        batch.commit();
+
+        ViewItPlugin.getInstance().getCostTracker().reset();
+        startAllocated = allocatedBytes();
+        startNanos = lastTick = System.nanoTime();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        sender.sendMessage(ChatColor.GOLD + String.format(
+                "Load test: %d elements (%d static, %d animated, %d placeholder, %d lambda) "
+                        + "for %d players over %ds", elements.size(), kindCounts[0],
+                kindCounts[1], kindCounts[2], kindCounts[3], players.size(), seconds));
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        tickIntervals[ticks++] = now - lastTick;
+        lastTick = now;
+
+        for (int i = 0; i < mutationsPerTick; i++) {
+            mutate();
+        }
+        if (ticks == tickIntervals.length) {
+            finish();
+        }
+    }
+
+    /**
+     * Makes one random change: a new priority, a replaced line or an element taken off a player
+     * and shown again
+     */
+    private void mutate() {
+        ScoreboardElement element = elements.get(random.nextInt(elements.size()));
+        int type = random.nextInt(mutations.length);
+        mutations[type]++;
+        switch (type) {
+            case 0:
+                element.setPriority(LOW(random.nextInt(100)).intValue());
+                break;
+            case 1:
+                element.setLine(random.nextInt(LINES), Supply.of(plugin.rand("mutated")));
+                break;
+            case 2:
+                Player player = players.get(random.nextInt(players.size()));
+                if (!player.isOnline()) {
+                    break;
+                }
+                ScoreboardService.getInstance().removeElement(player, element);
+                ScoreboardService.getInstance().addElement(player, element);
+                break;
+        }
+    }
+
+    /**
+     * Stops changing the elements, takes them off every player and reports the results
+     */
+    void finish() {
+        task.cancel();
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        long allocated = startAllocated < 0 ? -1L : allocatedBytes() - startAllocated;
+        CostTracker costs = ViewItPlugin.getInstance().getCostTracker();
+        long passes = costs.getUpdateCount();
+        long[] durations = costs.getUpdateDurations();
+
+        ScoreboardElement[] shown = elements.toArray(new ScoreboardElement[elements.size()]);
+        ScoreboardBatch batch = ScoreboardService.getInstance().batch();
+        Bukkit.getOnlinePlayers().forEach(p -> batch.removeElements(p, shown));
+        // players draw the elements until the batch is applied so they're cancelled after
+        batch.commit(() -> Arrays.asList(shown).forEach(ScoreboardElement::cancel));
+        SimulatedPlayers.remove(simulated);
+        elements.clear();
+
+        sender.sendMessage(ChatColor.GOLD + String.format(
+                "Load test finished after %d ticks in %.1fs", ticks, elapsed));
+        sender.sendMessage(String.format("Main thread ticks: p50 %s, p95 %s, p99 %s, max %s",
+                millis(tickIntervals, 50), millis(tickIntervals, 95), millis(tickIntervals, 99),
+                millis(tickIntervals, 100)));
+        if (costs.isEnabled()) {
+            sender.sendMessage(String.format("Update passes: %d (%.1f/s, %.0f boards/s), "
+                            + "p50 %s, p95 %s, p99 %s, max %s", passes, passes / elapsed,
+                    passes * players.size() / elapsed, millis(durations, 50),
+                    millis(durations, 95), millis(durations, 99), millis(durations, 100)));
+            costs.report(3).forEach(sender::sendMessage);
+        } else {
+            sender.sendMessage(ChatColor.RED + "Update passes weren't timed; set stats.mode in "
+                    + "ViewIt's config to full or sampled");
+        }
+        sender.sendMessage(String.format("Mutations: %d (%d priorities, %d lines, %d re-adds)",
+                mutations[0] + mutations[1] + mutations[2], mutations[0], mutations[1],
+                mutations[2]));
+        sender.sendMessage(allocated < 0 ? "Allocations: not supported by this JVM"
+                : String.format("Allocations: %d MiB (%d KiB per tick) across all threads",
+                        allocated >> 20, (allocated >> 10) / Math.max(1, ticks)));
+        plugin.loadTest = null;
+    }
+
+    private static String millis(long[] durations, double percentile) {
+        return String.format("%.2fms", CostTracker.percentile(durations, percentile) / 1e6);
+    }
+
+    /**
+     * Gets the bytes allocated by every live thread so far, or -1 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1L;
+        }
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+        if (!sun.isThreadAllocatedMemorySupported() || !sun.isThreadAllocatedMemoryEnabled()) {
+            return -1L;
+        }
+        long total = 0;
+        for (long bytes : sun.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0L, bytes);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 t7seven7t
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package net.t7seven7t.viewittest;
+
+import com.google.common.collect.Lists;
+
+import net.t7seven7t.viewit.ViewItPlugin;
+
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stand-in players that aren't connected to the server, used to measure ViewIt with more players
+ * than are online. Only the methods ViewIt relies on behave like a real player; everything else
+ * returns a default value.
+ */
+class SimulatedPlayers {
+
+    /**
+     * Creates simulated players named sim0, sim1 and so on
+     */
+    static List<Player> create(int count) {
+        List<Player> players = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            players.add(create("sim" + i));
+        }
+        return players;
+    }
+
+    static Player create(String name) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(),
+                new Class<?>[]{Player.class}, new Handler(name));
+    }
+
+    /**
+     * Releases everything ViewIt keeps for the simulated players. Other plugins never hear of
+     * them so no quit event is called.
+     */
+    static void remove(List<Player> players) {
+        players.forEach(ViewItPlugin.getInstance()::releasePlayer);
+    }
+
+    private static class Handler implements InvocationHandler {
+        private final String name;
+        private final UUID uniqueId;
+        private Scoreboard scoreboard;
+
+        private Handler(String name) {
+            this.name = name;
+            this.uniqueId = UUID.nameUUIDFromBytes(("Simulated:" + name)
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getName":
+                case "getDisplayName":
+                case "getPlayerListName":
+                    return name;
+                case "getUniqueId":
+                    return uniqueId;
+                case "isOnline":
+                case "isValid":
+                    return true;
+                case "getScoreboard":
+                    return scoreboard;
+                case "setScoreboard":
+                    scoreboard = (Scoreboard) args[0];
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SimulatedPlayer{name=" + name + "}";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private Object defaultValue(Class<?> type) {
+            if (!type.isPrimitive() || type == void.class) {
+                return null;
+            } else if (type == boolean.class) {
+                return false;
+            } else if (type == char.class) {
+                return '\0';
+            } else if (type == long.class) {
+                return 0L;
+            } else if (type == float.class) {
+                return 0F;
+            } else if (type == double.class) {
+                return 0D;
+            } else if (type == byte.class) {
+                return (byte) 0;
+            } else if (type == short.class) {
+                return (short) 0;
+            }
+            return 0;
+        }
+    }
+}
@@ -24,12 +24,21 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import net.t7seven7t.viewit.ViewItPlugin;
+import net.t7seven7t.viewit.network.LoopbackTransport;
+import net.t7seven7t.viewit.network.NetworkValues;
+import net.t7seven7t.viewit.replacer.AsyncReplacer;
+import net.t7seven7t.viewit.replacer.BatchReplacer;
+import net.t7seven7t.viewit.replacer.Replacer;
+import net.t7seven7t.viewit.replacer.Replacers;
+import net.t7seven7t.viewit.scoreboard.ScoreboardBatch;
 import net.t7seven7t.viewit.scoreboard.ScoreboardElement;
 import static net.t7seven7t.viewit.scoreboard.ScoreboardElement.Priority.*;
 import net.t7seven7t.viewit.scoreboard.ScoreboardService;
 import net.t7seven7t.viewit.supply.FrameSupply;
 import net.t7seven7t.viewit.supply.Supply;
 
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
@@ -38,6 +47,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.util.NumberConversions;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -50,8 +60,13 @@ import java.util.stream.IntStream;
  * each</li> <li>Modifying priorities of elements</li> <li>Adding lines to elements (insert and &gt;
  * getSize())</li> <li>Removing lines from elements</li> <li>Element removal on plugin disable</li>
  * <li>Multiple players with my code for teams (only using a single color cuz scoreboards are
- * separate)</li>
- *
+ * separate)</li> <li>Procedural effects (E8)</li> <li>Heap used per player per element (/vtest heap
+ * &lt;players&gt;)</li> <li>Replacing every element in one batch without intermediate states
+ * (/vtest swap &lt;element&gt;)</li> <li>Placeholders loaded in the background (E9)</li>
+ * <li>Placeholders loaded for every player in one batch (E10)</li> <li>Values shared between
+ * servers through a loopback transport (E11)</li> <li>Tripping a failing placeholder (E12)</li>
+ * <li>Synthetic load with generated elements and simulated players (/vtest load &lt;elements&gt;
+ * &lt;players&gt; &lt;seconds&gt; [static:animated:placeholder:lambda] [mutations per tick])</li>
  * </UL>
  */
 public class ViewItTest extends JavaPlugin {
@@ -60,6 +75,8 @@ public class ViewItTest extends JavaPlugin {
     private final List<String> addedElements = Lists.newArrayList();
 
     double money = 0;
+    volatile int batchQueries = 0;
+    LoadTest loadTest;
     Random random = new Random();
 
     @Override
@@ -84,10 +101,63 @@ public class ViewItTest extends JavaPlugin {
         elements.put("E6", ScoreboardElement
                 .of(this, HIGH(60), 15L, Supply.of(rand("%name%"), rand("%name%"), rand("%name%"))));
         elements.put("E7", ScoreboardElement.of(this, HIGH(55), 30L, Supply.of("%ping%")));
+        elements.put("E8", ScoreboardElement.of(this, HIGH(70), 4L,
+                Supply.marquee("This text scrolls along one line at a time", 14, "&e"),
+                Supply.colorWave("Color wave", 2, ChatColor.RED, ChatColor.GOLD, ChatColor.YELLOW),
+                Supply.typewriter("&aTyped &2out", 10), Supply.blink("&c&lBLINK", 2, 2)));
+
+        // pretend to query a slow database; the board keeps drawing while this loads
+        Replacers.registerReplacer(AsyncReplacer.of("slowbalance", p -> {
+            try {
+                Thread.sleep(500L);
+            } catch (InterruptedException e) {
+                return null;
+            }
+            return "&e$" + random.nextInt(1000);
+        }));
+        elements.put("E9", ScoreboardElement.of(this, HIGH(80), 100L,
+                Supply.of("&bBalance: %slowbalance%")));
+
+        // pretend to run one IN (...) query for every player shown the placeholder
+        Replacers.registerReplacer(BatchReplacer.from("batchrank", targets -> {
+            int query = ++batchQueries;
+            return targets.stream().collect(Collectors.toMap(p -> p,
+                    p -> "&d#" + (Math.abs(p.getName().hashCode()) % 100) + " &7q" + query + "/"
+                            + targets.size()));
+        }));
+        elements.put("E10", ScoreboardElement.of(this, HIGH(90), 20L,
+                Supply.of("&bRank: %batchrank%")));
+
+        // a second transport in the same process stands in for another server on the network
+        NetworkValues network = ViewItPlugin.getInstance().getNetworkValues();
+        LoopbackTransport local = new LoopbackTransport();
+        LoopbackTransport otherServer = new LoopbackTransport(local);
+        network.setTransport(local);
+        Bukkit.getScheduler().runTaskTimer(this, () -> {
+            network.set("here_online", String.valueOf(Bukkit.getOnlinePlayers().size()));
+            otherServer.publish(Collections.singletonMap("lobby_online",
+                    String.valueOf(random.nextInt(100))));
+        }, 20L, 40L);
+        elements.put("E11", ScoreboardElement.of(this, HIGH(100), 20L,
+                Supply.of("&bHere: %network_here_online%"),
+                Supply.of("&bLobby: %network_lobby_online%")));
+
+        // fails most of the time so is tripped and shows its last good value; see /scoreboard stats
+        Replacers.registerReplacer(Replacer.of("flaky", (Player p) -> {
+            if (random.nextInt(4) != 0) {
+                throw new IllegalStateException("flaky placeholder failed");
+            }
+            return "&a" + random.nextInt(100);
+        }));
+        elements.put("E12", ScoreboardElement.of(this, HIGH(110), 10L,
+                Supply.of("&bFlaky: %flaky%")));
     }
 
     @Override
     public void onDisable() {
+        if (loadTest != null) {
+            loadTest.finish();
+        }
         elements.clear();
     }
 
@@ -101,6 +171,14 @@ public class ViewItTest extends JavaPlugin {
 
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 2 && args[0].equalsIgnoreCase("heap")) {
+            reportHeap(sender, NumberConversions.toInt(args[1]));
+            return true;
+        } else if (args.length >= 4 && args[0].equalsIgnoreCase("load")) {
+            startLoadTest(sender, args);
+            return true;
+        }
+
         if (args.length < 2 || !Player.class.isInstance(sender)) {
             return false;
         }
@@ -120,6 +198,13 @@ public class ViewItTest extends JavaPlugin {
         } else if (args[0].equalsIgnoreCase("remove")) {
             ss.removeElement(p, element);
             addedElements.remove(args[1]);
+        } else if (args[0].equalsIgnoreCase("swap")) {
+            // replace everything shown with this element and lower its priority in one update
+            ScoreboardBatch batch = ss.batch();
+            addedElements.forEach(name -> batch.removeElements(p, elements.get(name)));
+            batch.addElements(p, element).setPriority(element, element.getPriority() - 1).commit();
+            addedElements.clear();
+            addedElements.add(args[1]);
         } else if (args[0].equalsIgnoreCase("priority")) {
             if (args.length != 3) {
                 p.sendMessage("arg length");
@@ -148,6 +233,73 @@ public class ViewItTest extends JavaPlugin {
         return true;
     }
 
+    /**
+     * Renders every test element for simulated players and reports how much heap the per-player
+     * state of each element takes up. The figure varies with garbage collection so is only a
+     * diagnostic; what is stored per player is checked by SimpleScoreboardElementTest.
+     */
+    private void reportHeap(CommandSender sender, int playerCount) {
+        if (playerCount <= 0 || elements.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + "Need at least one player and element");
+            return;
+        }
+
+        // render once first so that shared caches aren't counted against players
+        List<Player> warmup = Collections.singletonList(SimulatedPlayers.create("warmup"));
+        warmup.forEach(p -> elements.values().forEach(e -> e.getContents(p)));
+
+        List<Player> players = SimulatedPlayers.create(playerCount);
+        long before = usedHeap();
+        players.forEach(p -> elements.values().forEach(e -> e.getContents(p)));
+        long after = usedHeap();
+        SimulatedPlayers.remove(players);
+        SimulatedPlayers.remove(warmup);
+
+        double bytes = (after - before) / (double) (playerCount * elements.size());
+        sender.sendMessage(ChatColor.GOLD + String.format(
+                "%d players x %d elements: %.1f bytes per player per element (%d KiB total)",
+                playerCount, elements.size(), bytes, (after - before) / 1024));
+    }
+
+    /**
+     * Starts a load test from the arguments of /vtest load
+     */
+    private void startLoadTest(CommandSender sender, String[] args) {
+        if (loadTest != null) {
+            sender.sendMessage(ChatColor.RED + "A load test is already running");
+            return;
+        }
+
+        int elementCount = NumberConversions.toInt(args[1]);
+        int playerCount = NumberConversions.toInt(args[2]);
+        int seconds = NumberConversions.toInt(args[3]);
+        String[] mix = (args.length > 4 ? args[4] : "1:1:1:1").split(":");
+        int[] weights = new int[LoadTest.Kind.values().length];
+        int total = 0;
+        for (int i = 0; i < weights.length && i < mix.length; i++) {
+            weights[i] = Math.max(0, NumberConversions.toInt(mix[i]));
+            total += weights[i];
+        }
+        int mutations = args.length > 5 ? NumberConversions.toInt(args[5]) : 5;
+        if (elementCount <= 0 || playerCount < 0 || seconds <= 0 || total <= 0
+                || mutations < 0) {
+            sender.sendMessage(ChatColor.RED + "Need at least one element, second and kind");
+            return;
+        }
+
+        loadTest = new LoadTest(this, sender, elementCount, playerCount, seconds, weights,
+                mutations);
+        loadTest.start();
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
     private String getElements() {
         return Joiner.on(", ").join(elements.keySet());
     }